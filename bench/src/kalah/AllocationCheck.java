@@ -0,0 +1,58 @@
+package kalah;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that the 'best first move' robot's decision allocates nothing once warmed up, on
+ * both the Board and the BoardCore views and for either side. Exits with status 1 if any
+ * bytes were allocated, so it can gate a build.
+ * Usage: java kalah.AllocationCheck
+ * @author mpie374
+ */
+public class AllocationCheck {
+    private static final int POSITIONS = 64;
+    private static final int WARMUP_CALLS = 2000000;
+    private static final int MEASURED_CALLS = 1000000;
+
+    private static volatile long sink; //stops the JIT removing the decisions
+
+    public static void main(String[] args) {
+        Board[] positions = SearchSpeedup.createPositions(POSITIONS, 7);
+        BoardView[] boards = new BoardView[POSITIONS];
+        BoardView[] cores = new BoardView[POSITIONS];
+        for(int i = 0; i < POSITIONS; i++) {
+            boards[i] = positions[i];
+            cores[i] = new BoardCore(positions[i].getCore());
+        }
+        BmfRobot bmf = new BmfRobot();
+        boolean passed = check("bmf.chooseHouse.board", bmf, boards);
+        passed &= check("bmf.chooseHouse.core", bmf, cores);
+        if(!passed)
+            System.exit(1);
+    }
+
+    /**
+     * Warms up the robot's decision on the positions, then counts the bytes the thread
+     * allocates over many more decisions
+     * @return - TRUE if nothing was allocated
+     */
+    private static boolean check(String name, BmfRobot bmf, BoardView[] views) {
+        decide(bmf, views, WARMUP_CALLS);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        decide(bmf, views, MEASURED_CALLS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        boolean passed = allocated == 0;
+        System.out.printf("%-24s %10d calls %10d bytes  %s%n", name, MEASURED_CALLS, allocated, passed ? "OK" : "FAIL");
+        return passed;
+    }
+
+    private static void decide(BmfRobot bmf, BoardView[] views, int calls) {
+        long result = 0;
+        for(int i = 0; i < calls; i++) {
+            result += bmf.chooseHouse(views[i & (POSITIONS - 1)], (i & POSITIONS) == 0);
+        }
+        sink += result;
+    }
+}
@@ -0,0 +1,160 @@
+package kalah;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Benchmarks for the hot paths of the game: sowing a single move, the 'best first move'
+ * robot's decision, end of game detection and whole games with and without rendering.
+ * Each case is warmed up, then timed over several fixed length iterations, and the bytes
+ * allocated per operation are read from the thread's allocation counter.
+ * Usage: java kalah.KalahBenchmark [benchmarkNameFilter]
+ * @author mpie374
+ */
+public class KalahBenchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 500000000L;
+    private static final int POSITIONS = 64;
+
+    private static volatile long sink; //stops the JIT removing benchmark results
+
+    /**
+     * A single benchmarked operation
+     */
+    private interface Operation {
+        long run();
+    }
+
+    private static class Case {
+        final String name;
+        final Operation operation;
+
+        Case(String name, Operation operation) {
+            this.name = name;
+            this.operation = operation;
+        }
+    }
+
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        System.out.println("# " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version")
+                + ", " + Runtime.getRuntime().availableProcessors() + " cpus");
+        System.out.printf("%-24s %12s %14s %10s%n", "benchmark", "ns/op", "ops/s", "B/op");
+        for(Case benchmark : cases()) {
+            if(benchmark.name.contains(filter))
+                measure(benchmark);
+        }
+    }
+
+    /**
+     * Builds the benchmark cases over a fixed set of seeded mid-game positions
+     */
+    private static List<Case> cases() {
+        Board[] positions = SearchSpeedup.createPositions(POSITIONS, 7);
+        BoardCore[] cores = new BoardCore[POSITIONS];
+        for(int i = 0; i < POSITIONS; i++) {
+            cores[i] = new BoardCore(positions[i].getCore());
+        }
+        List<Case> cases = new ArrayList<>();
+
+        //every legal Player 2 move in the positions, as (position, house index) pairs
+        List<int[]> legalMoves = new ArrayList<>();
+        for(int i = 0; i < POSITIONS; i++) {
+            for(int house = cores[i].NUMHOUSES + 1; house < cores[i].P2STOREINDEX; house++) {
+                if(cores[i].getSeeds(house) != 0)
+                    legalMoves.add(new int[] {i, house});
+            }
+        }
+        int[][] sowMoves = legalMoves.toArray(new int[0][]);
+        int[] nextMove = new int[1];
+        cases.add(new Case("sow.singleMove", () -> {
+            int[] move = sowMoves[nextMove[0]++ % sowMoves.length];
+            BoardCore core = cores[move[0]];
+            long result = core.makeMove(move[1], false);
+            core.unmakeMove();
+            return result;
+        }));
+
+        int[] next = new int[1];
+
+        NullIO quietIO = new NullIO(1);
+        cases.add(new Case("bmf.robotTurn", () -> Kalah.robotTurn(positions[next[0]++ & (POSITIONS - 1)], quietIO)));
+
+        cases.add(new Case("board.isBoardEmpty", () -> {
+            Board board = positions[next[0]++ & (POSITIONS - 1)];
+            return (board.isBoardEmpty(true) ? 1 : 0) + (board.isBoardEmpty(false) ? 2 : 0);
+        }));
+
+        cases.add(new Case("render.frame", () -> {
+            Board board = positions[next[0]++ & (POSITIONS - 1)];
+            board.displayBoard(quietIO, false);
+            return 1;
+        }));
+
+        NullIO gameIO = new NullIO(2);
+        cases.add(new Case("game.rendered", () -> {
+            new Kalah().play(gameIO, false, true);
+            return 1;
+        }));
+
+        GameEngine engine = new GameEngine();
+        SplittableRandom random = new SplittableRandom(3);
+        BmfRobot bmf = new BmfRobot();
+        cases.add(new Case("game.headless", () -> {
+            engine.reset();
+            BoardCore core = engine.getBoard().getCore();
+            long moves = 0;
+            while(!engine.isGameOver()) {
+                boolean isPlayOneTurn = engine.isPlayOneTurn();
+                int house = isPlayOneTurn ? SelfPlay.randomHouse(core, true, random) : bmf.chooseHouse(core, false);
+                engine.play(house);
+                moves++;
+            }
+            return moves;
+        }));
+        return cases;
+    }
+
+    /**
+     * Warms up then times a case, printing the mean time and allocation per operation
+     */
+    private static void measure(Case benchmark) {
+        for(int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iterate(benchmark.operation);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long ops = 0;
+        long nanos = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            ops += iterate(benchmark.operation);
+            nanos += System.nanoTime() - start;
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%-24s %12.1f %14.0f %10.1f%n", benchmark.name, (double) nanos / ops,
+                ops * 1e9 / nanos, (double) allocated / ops);
+    }
+
+    /**
+     * Runs an operation repeatedly for one iteration's worth of time
+     * @return - number of operations run
+     */
+    private static long iterate(Operation operation) {
+        long end = System.nanoTime() + ITERATION_NANOS;
+        long ops = 0;
+        long result = 0;
+        do {
+            for(int i = 0; i < 64; i++) {
+                result += operation.run();
+            }
+            ops += 64;
+        } while(System.nanoTime() < end);
+        sink += result;
+        return ops;
+    }
+}
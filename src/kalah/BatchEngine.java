@@ -0,0 +1,333 @@
+package kalah;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many games in lockstep, stored as structure of arrays: one int[] per pit index holding
+ * that pit's seeds in every game, plus the side to move and whether each game is over. play
+ * takes one move per game and applies them all in one pass over the pits, with the same rules
+ * as Board.sowSeeds.
+ * Sowing is done in closed form, as in BoardCore.sow: a move of n seeds puts n / (BOARDSIZE - 1)
+ * seeds in every pit but the skipped Store, plus one more in each of the first n % (BOARDSIZE - 1)
+ * pits it reaches. So every pit's new count is a few integer operations on per-game values, with
+ * no per-seed loop. The loop for each pit runs over games with only branch-free integer
+ * arithmetic, which C2's superword pass turns into SIMD instructions; that loop also totals
+ * each side's Houses. The capture check, which reads pits chosen per game, and the empty side
+ * check that ends a game (as in Board.isBoardEmpty, using those totals) run per game afterwards.
+ * The incubating Vector API would need --add-modules jdk.incubator.vector on every javac and
+ * java command line, so plain loops written for auto-vectorisation are used instead.
+ * Usage: java kalah.BatchEngine [games] [seconds] [threads] plays random games and reports moves/sec
+ * @author mpie374
+ */
+public class BatchEngine {
+    public final int NUMHOUSES;
+    public final int BOARDSIZE;
+    private final int P1STOREINDEX;
+    private final int P2STOREINDEX;
+    private final int numGames;
+    private final int seedsPerHouse;
+    private final int[][] pits; //pits[pit][game]
+    private final boolean[] isPlayOneTurn;
+    private final boolean[] gameOver;
+    //per game values of the move being played
+    private final int[] start;
+    private final int[] laps;
+    private final int[] remainder; //-1 for a game that isn't moving
+    private final int[] skipDistance; //steps from the start house to the skipped Store
+    private final int[] playerOneTotal; //seeds in Player 1's Houses after the move
+    private final int[] playerTwoTotal;
+    private int liveGames;
+
+    /**
+     * Creates a batch of new games
+     * @param numGames - number of games played in lockstep
+     * @param numHouses - number of Houses per Player
+     * @param seedsPerHouse - seeds each House starts with
+     */
+    public BatchEngine(int numGames, int numHouses, int seedsPerHouse) {
+        NUMHOUSES = numHouses;
+        BOARDSIZE = numHouses * 2 + 2;
+        P1STOREINDEX = numHouses;
+        P2STOREINDEX = BOARDSIZE - 1;
+        this.numGames = numGames;
+        this.seedsPerHouse = seedsPerHouse;
+        pits = new int[BOARDSIZE][numGames];
+        isPlayOneTurn = new boolean[numGames];
+        gameOver = new boolean[numGames];
+        start = new int[numGames];
+        laps = new int[numGames];
+        remainder = new int[numGames];
+        skipDistance = new int[numGames];
+        playerOneTotal = new int[numGames];
+        playerTwoTotal = new int[numGames];
+        //every slot starts as a finished game so reset counts it as a new live one
+        Arrays.fill(gameOver, true);
+        for(int game = 0; game < numGames; game++) {
+            reset(game);
+        }
+    }
+
+    /**
+     * Starts a new game in one slot, Player 1 to move
+     * @param game - slot of the game
+     */
+    public void reset(int game) {
+        for(int pit = 0; pit < BOARDSIZE; pit++) {
+            pits[pit][game] = pit == P1STOREINDEX || pit == P2STOREINDEX ? 0 : seedsPerHouse;
+        }
+        isPlayOneTurn[game] = true;
+        if(gameOver[game])
+            liveGames++;
+        gameOver[game] = false;
+    }
+
+    /**
+     * Copies a position into one slot
+     * @param game - slot of the game
+     * @param core - position to copy
+     * @param isPlayOneTurn - TRUE if Player 1 is to move
+     */
+    public void load(int game, BoardCore core, boolean isPlayOneTurn) {
+        for(int pit = 0; pit < BOARDSIZE; pit++) {
+            pits[pit][game] = core.getSeeds(pit);
+        }
+        this.isPlayOneTurn[game] = isPlayOneTurn;
+        boolean over = core.getHouseTotal(isPlayOneTurn) == 0;
+        if(over != gameOver[game])
+            liveGames += over ? -1 : 1;
+        gameOver[game] = over;
+    }
+
+    /**
+     * Plays one move in every game that isn't over
+     * @param houses - house number (1 to NUMHOUSES) to move from in each game; 0 skips the game
+     * @param events - if not null, filled with each game's GameEngine event flags, 0 for a
+     * skipped game and EMPTY_HOUSE for a move from an empty house, which is not played
+     * @return - number of games still being played
+     */
+    public int play(int[] houses, int[] events) {
+        int lapLength = BOARDSIZE - 1;
+        for(int game = 0; game < numGames; game++) {
+            int house = gameOver[game] ? 0 : houses[game];
+            int startIndex = isPlayOneTurn[game] ? house - 1 : house + NUMHOUSES;
+            int seeds = house == 0 ? 0 : pits[startIndex][game];
+            if(events != null)
+                events[game] = house != 0 && seeds == 0 ? GameEngine.EMPTY_HOUSE : 0;
+            if(seeds == 0) {
+                remainder[game] = -1; //nothing is added to any pit
+                laps[game] = 0;
+                start[game] = 0;
+                skipDistance[game] = BOARDSIZE + 1;
+                continue;
+            }
+            pits[startIndex][game] = 0;
+            start[game] = startIndex;
+            laps[game] = seeds / lapLength;
+            remainder[game] = seeds % lapLength;
+            int skipIndex = isPlayOneTurn[game] ? P2STOREINDEX : P1STOREINDEX;
+            skipDistance[game] = skipIndex > startIndex ? skipIndex - startIndex : skipIndex - startIndex + BOARDSIZE;
+        }
+
+        Arrays.fill(playerOneTotal, 0);
+        Arrays.fill(playerTwoTotal, 0);
+        for(int pit = 0; pit < BOARDSIZE; pit++) {
+            int[] total = pit < P1STOREINDEX ? playerOneTotal : pit == P1STOREINDEX || pit == P2STOREINDEX ? null : playerTwoTotal;
+            if(total == null)
+                sowStore(pits[pit], pit);
+            else
+                sowHouse(pits[pit], pit, total);
+        }
+
+        for(int game = 0; game < numGames; game++) {
+            if(remainder[game] >= 0)
+                finishMove(game, events);
+        }
+        return liveGames;
+    }
+
+    /**
+     * Adds each game's seeds for one House and adds the House to its side's total. A pit
+     * reached after d steps from the start house, not counting the skipped Store, gains a seed
+     * for every lap plus one if d is within the remainder; the start house itself is a whole
+     * lap away. The comparisons are done with sign bit shifts so the loop has no branches.
+     */
+    private void sowHouse(int[] row, int pit, int[] total) {
+        for(int game = 0; game < numGames; game++) {
+            int seeds = row[game] + seedsAdded(pit, game);
+            row[game] = seeds;
+            total[game] += seeds;
+        }
+    }
+
+    /**
+     * Adds each game's seeds for one Store
+     */
+    private void sowStore(int[] row, int pit) {
+        for(int game = 0; game < numGames; game++) {
+            row[game] += seedsAdded(pit, game);
+        }
+    }
+
+    private int seedsAdded(int pit, int game) {
+        int distance = pit - start[game];
+        distance += BOARDSIZE & ((distance - 1) >> 31); //distance <= 0 wraps round the board
+        int skipDistance = this.skipDistance[game];
+        int steps = distance + ((skipDistance - distance) >> 31); //the skipped Store isn't a step
+        int add = laps[game] + 1 + ((remainder[game] - steps) >> 31); //one more if steps <= remainder
+        return add & ~(((distance ^ skipDistance) - 1) >> 31); //nothing for the skipped Store
+    }
+
+    /**
+     * Finds where the last seed landed, then applies the extra turn and capture rules and the
+     * empty side check for one game
+     */
+    private void finishMove(int game, int[] events) {
+        boolean isPlayOne = isPlayOneTurn[game];
+        //the last seed lands remainder steps on, or back in the start house after whole laps
+        int steps = remainder[game] == 0 ? BOARDSIZE - 1 : remainder[game];
+        int last = start[game] + steps + (skipDistance[game] <= steps ? 1 : 0);
+        if(last >= BOARDSIZE)
+            last -= BOARDSIZE;
+
+        int ownStoreIndex = isPlayOne ? P1STOREINDEX : P2STOREINDEX;
+        int flags = 0;
+        if(last == ownStoreIndex) {
+            flags = GameEngine.EXTRA_TURN;
+        } else {
+            boolean inOwnHouse = isPlayOne ? last < P1STOREINDEX : last > P1STOREINDEX;
+            int opposingIndex = -last + (NUMHOUSES * 2);
+            if(inOwnHouse && pits[last][game] == 1 && pits[opposingIndex][game] != 0) {
+                int captured = pits[opposingIndex][game];
+                pits[ownStoreIndex][game] += 1 + captured;
+                pits[last][game] = 0;
+                pits[opposingIndex][game] = 0;
+                (isPlayOne ? playerOneTotal : playerTwoTotal)[game] -= 1;
+                (isPlayOne ? playerTwoTotal : playerOneTotal)[game] -= captured;
+                flags = GameEngine.CAPTURE;
+            }
+            isPlayOne = !isPlayOne;
+            isPlayOneTurn[game] = isPlayOne;
+        }
+
+        int seedsRemaining = isPlayOne ? playerOneTotal[game] : playerTwoTotal[game];
+        if(seedsRemaining == 0) {
+            gameOver[game] = true;
+            liveGames--;
+            flags |= GameEngine.GAME_OVER;
+        }
+        if(events != null)
+            events[game] = flags;
+    }
+
+    public int getNumGames() {
+        return numGames;
+    }
+
+    public int getLiveGames() {
+        return liveGames;
+    }
+
+    public int getSeeds(int game, int pit) {
+        return pits[pit][game];
+    }
+
+    public boolean isPlayOneTurn(int game) {
+        return isPlayOneTurn[game];
+    }
+
+    public boolean isGameOver(int game) {
+        return gameOver[game];
+    }
+
+    /**
+     * Picks a random house with seeds in it for every game that isn't over, using one
+     * xorshift generator per game
+     * @param houses - filled with each game's house number, 0 for a game that is over
+     * @param randomState - one non-zero generator state per game, updated
+     */
+    public void randomHouses(int[] houses, long[] randomState) {
+        for(int game = 0; game < numGames; game++) {
+            if(gameOver[game]) {
+                houses[game] = 0;
+                continue;
+            }
+            long x = randomState[game];
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            randomState[game] = x;
+            int firstIndex = isPlayOneTurn[game] ? 0 : P1STOREINDEX + 1;
+            //start at a random house and take the first one with seeds from there
+            int house = (int) (((x >>> 32) * NUMHOUSES) >>> 32);
+            while(pits[firstIndex + house][game] == 0) {
+                house = house + 1 == NUMHOUSES ? 0 : house + 1;
+            }
+            houses[game] = house + 1;
+        }
+    }
+
+    /**
+     * Plays random games for a number of seconds on each thread, each thread with its own
+     * batch, starting a new game in each slot as its game ends, and prints the move rate
+     */
+    public static void main(String[] args) throws Exception {
+        int numGames = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 5;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> workers = new ArrayList<>();
+            long end = System.nanoTime() + (long) (seconds * 1e9);
+            for(int worker = 0; worker < threads; worker++) {
+                long seed = worker + 1;
+                workers.add(pool.submit(() -> playRandomGames(numGames, seed, end)));
+            }
+            long moves = 0;
+            long games = 0;
+            for(Future<long[]> worker : workers) {
+                long[] tally = worker.get();
+                moves += tally[0];
+                games += tally[1];
+            }
+            System.out.printf("%d threads x %d games in lockstep: %d moves, %d games finished in %.2f s%n",
+                    threads, numGames, moves, games, seconds);
+            System.out.printf("%.0f moves/sec, %.0f games/sec%n", moves / seconds, games / seconds);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays random games on one batch until the end time
+     * @return - moves played and games finished
+     */
+    private static long[] playRandomGames(int numGames, long seed, long end) {
+        BatchEngine batch = new BatchEngine(numGames, 6, 4);
+        int[] houses = new int[numGames];
+        long[] randomState = new long[numGames];
+        for(int game = 0; game < numGames; game++) {
+            randomState[game] = 0x9E3779B97F4A7C15L * (seed * numGames + game);
+        }
+        long moves = 0;
+        long games = 0;
+        while(System.nanoTime() < end) {
+            for(int step = 0; step < 64; step++) {
+                batch.randomHouses(houses, randomState);
+                moves += batch.getLiveGames();
+                batch.play(houses, null);
+            }
+            for(int game = 0; game < numGames; game++) {
+                if(batch.isGameOver(game)) {
+                    batch.reset(game);
+                    games++;
+                }
+            }
+        }
+        return new long[] {moves, games};
+    }
+}
@@ -0,0 +1,47 @@
+package kalah;
+
+/**
+ * The 'best first move' rules that Kalah.robotTurn has always played, for either side:
+ * Priority 1: lowest house number that leads to an additional turn (ends in store)
+ * Priority 2: lowest house number that leads to a capture of opposition seeds
+ * Priority 3: first legal move, if there is one
+ * @author mpie374
+ */
+public class BmfRobot implements Robot {
+    private String reason = "";
+
+    /**
+     * Chooses the first house by the rules' priorities
+     * @param board - the current state of the playing board
+     * @param isPlayOneTurn - TRUE if the robot is playing as Player 1
+     * @return - the house number of the chosen move, or -1 if there is no legal move
+     */
+    public int chooseHouse(BoardView board, boolean isPlayOneTurn) {
+        int numHouses = board.getNumHouses();
+        int firstIndex = isPlayOneTurn ? 0 : numHouses + 1;
+        for(int i = 0; i < numHouses; i++) {
+            if(board.endsInStore(firstIndex + i, isPlayOneTurn)) {
+                reason = "it leads to an extra move";
+                return i + 1;
+            }
+        }
+        for(int i = 0; i < numHouses; i++) {
+            if(board.leadsToCapture(firstIndex + i, isPlayOneTurn)) {
+                reason = "it leads to a capture";
+                return i + 1;
+            }
+        }
+        for(int i = 0; i < numHouses; i++) {
+            if(board.getSeeds(firstIndex + i) != 0) {
+                reason = "it is the first legal move";
+                return i + 1;
+            }
+        }
+        reason = "";
+        return -1;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
@@ -1,29 +1,50 @@
 package kalah;
 
 import com.qualitascorpus.testsupport.IO;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 /**
  * This class controls the playingBoard and its state. It distributes the seeds for each
  * Player's turn, captures the seeds, and completes the checks for any special turns or
- * whetehr the board is empty after each turn.
+ * whetehr the board is empty after each turn. The seeds are held in a BoardCore, and the
+ * Pits in playingBoard are views over it.
  * @author mpie374
  */
-public class Board {
-    public final int NUMHOUSES = 6;
-    public final int BOARDSIZE = (NUMHOUSES * 2) + 2;
-    private final int P1STOREINDEX = NUMHOUSES;
-    private final int P2STOREINDEX = BOARDSIZE - 1;
+public class Board implements BoardView {
+    public final int NUMHOUSES;
+    public final int BOARDSIZE;
+    private final int P1STOREINDEX;
+    private final int P2STOREINDEX;
+    private final int seedsPerHouse;
+    private BoardCore core;
+    private BoardRenderer renderer;
     private ArrayList<Pit> playingBoard;
     private Player playerOne;
     private Player playerTwo;
 
     /**
-     * Default constructor, creates both Player's and the playing Board
+     * Default constructor, creates the standard board of 6 Houses per Player with 4 seeds each
      */
     Board() {
-        playerOne = new Player(NUMHOUSES);
-        playerTwo = new Player(NUMHOUSES);
+        this(6, 4);
+    }
+
+    /**
+     * Creates the board core, then both Player's and the playing Board as views over it
+     * @param numHouses - number of Houses belonging to each Player
+     * @param seedsPerHouse - number of seeds each House starts with
+     */
+    Board(int numHouses, int seedsPerHouse) {
+        NUMHOUSES = numHouses;
+        BOARDSIZE = (NUMHOUSES * 2) + 2;
+        P1STOREINDEX = NUMHOUSES;
+        P2STOREINDEX = BOARDSIZE - 1;
+        this.seedsPerHouse = seedsPerHouse;
+        core = new BoardCore(NUMHOUSES);
+        renderer = new BoardRenderer(NUMHOUSES);
+        playerOne = new Player(NUMHOUSES, seedsPerHouse, core, 0);
+        playerTwo = new Player(NUMHOUSES, seedsPerHouse, core, P1STOREINDEX + 1);
         playingBoard = new ArrayList<>();
         playingBoard.addAll(playerOne.getPlayerPits());
         playingBoard.addAll(playerTwo.getPlayerPits());
@@ -36,10 +57,17 @@ public class Board {
      * @param vertical - TRUE if board to be displayed vertically
      */
     public void displayBoard(IO io, boolean vertical) {
-        if(vertical)
-            displayVerticalBoard(io);
-        else
-            displayHorizontalBoard(io);
+        renderer.draw(io, core, vertical);
+    }
+
+    /**
+     * This method displays the board after a move, unless the renderer's frame interval
+     * skips intermediate boards
+     * @param io
+     * @param vertical - TRUE if board to be displayed vertically
+     */
+    public void displayFrame(IO io, boolean vertical) {
+        renderer.drawFrame(io, core, vertical);
     }
 
     /**
@@ -48,16 +76,7 @@ public class Board {
      * @param io
      */
     public void displayVerticalBoard(IO io) {
-        io.println("+---------------+");
-        io.println("|       | P2 " + playingBoard.get(P2STOREINDEX).toString() + " |");
-        io.println("+-------+-------+");
-        for(int i = 0; i < NUMHOUSES; i++) {
-            io.println("| " + (i + 1) + "[" + playingBoard.get(i).toString() + "] | " + (NUMHOUSES - i) +
-                    "[" + playingBoard.get(playingBoard.size() - i - 2).toString() + "] |");
-        }
-        io.println("+-------+-------+");
-        io.println("| P1 " + playingBoard.get(P1STOREINDEX).toString() + " |       |");
-        io.println("+---------------+");
+        renderer.draw(io, core, true);
     }
 
     /**
@@ -67,22 +86,15 @@ public class Board {
      * @param io
      */
     public void displayHorizontalBoard(IO io) {
-        io.println("+----+-------+-------+-------+-------+-------+-------+----+");
-        io.print("| P2 |");
-        for(int i = 0; i < NUMHOUSES; i++) {
-            io.print(" " + (NUMHOUSES - i) + "[" + playingBoard.get(playingBoard.size() - i - 2).toString() + "] |");
-        }
-        io.print(" " + playingBoard.get(P1STOREINDEX).toString() + " |");
-        io.println("");
-        io.println("|    |-------+-------+-------+-------+-------+-------|    |");
-        io.print("| " + playingBoard.get(P2STOREINDEX).toString() + " |");
-        for(int i = 0; i < NUMHOUSES; i++) {
-            io.print(" " + (i + 1) + "[" + playingBoard.get(i).toString() + "] |");
-        }
-        io.print(" P1 |");
-        io.println("");
-        io.print("+----+-------+-------+-------+-------+-------+-------+----+");
-        io.println("");
+        renderer.draw(io, core, false);
+    }
+
+    /**
+     * Retrieves the renderer that formats this Board's frames
+     * @return BoardRenderer of this Board
+     */
+    public BoardRenderer getRenderer() {
+        return renderer;
     }
 
     /**
@@ -98,60 +110,28 @@ public class Board {
      */
     public boolean sowSeeds(boolean isPlayOneTurn, boolean isBoardEmpty, int selectedHouse, IO io) {
         int startHouseIndex = isPlayOneTurn? (selectedHouse - 1) : (selectedHouse + NUMHOUSES);
-        int numSeedsToSow = playingBoard.get(startHouseIndex).getNumSeeds();
+        int numSeedsToSow = core.getSeeds(startHouseIndex);
+        long started = Metrics.start();
         if(numSeedsToSow == 0 && !isBoardEmpty) {
+            Metrics.recordMove(started, isPlayOneTurn, selectedHouse, GameEngine.EMPTY_HOUSE);
             io.println("House is empty. Move again.");
             return isPlayOneTurn;
         }
 
-        int moves = 1; //moves made this turn
-        playingBoard.get(startHouseIndex).emptyPit();
-        while(moves <= numSeedsToSow) {
-            //skip p1 store when p2 turn
-            if(startHouseIndex + moves == P1STOREINDEX && !isPlayOneTurn) {
-                moves++;
-                numSeedsToSow++; //to account for jumping a move
-            } else if (startHouseIndex + moves == P2STOREINDEX && isPlayOneTurn) { //skip p2 store when p1 turn
-                moves++;
-                numSeedsToSow++; //to account for jumping a move
-            }
-            //check if end of playingBoard has been reached, then restart at index 0 (p1 House 1)
-            if(startHouseIndex + moves == BOARDSIZE) {
-                startHouseIndex -= (startHouseIndex + moves);
-            }
-            playingBoard.get(startHouseIndex + moves).addSeeds(1);
-            moves++;
-        }
-
         /**
          * Checks final seed for special turns and outcomes.
-         * Scen 1. Player 1's turn and they end in the P1 Store == P1 turn again
-         * Scen 2. Player 2's turn and they end in the P2 Store == P2 turn again
-         * Scen 3. P1's turn, they end in their own House which was prev. empty
-         *          && the opposite P2 house is not empty == P1 captures both lots
-         *          of seeds into their own store, P2 turn
-         * Scen 4. P2's turn, they end in their own House which was prev. empty
-         *          && the opposite P1 house is not empty == P2 captures both lots
-         *          of seeds into their own Store, P1 turn
-         * Scen 5. Normal end of turn == swaps to other player
+         * Scen 1. Player ends in their own Store == same Player's turn again
+         * Scen 2. Player ends in their own House which was prev. empty
+         *          && the opposite house is not empty == Player captures both lots
+         *          of seeds into their own Store, other Player's turn
+         * Scen 3. Normal end of turn == swaps to other player
          */
-        int currentPos = startHouseIndex + moves - 1; //index in the ArrayList
-        if(isPlayOneTurn && currentPos == P1STOREINDEX) { //Scen. 1
-            isPlayOneTurn = true;
-        } else if(!isPlayOneTurn && currentPos == P2STOREINDEX) { //Scen. 2
-            isPlayOneTurn = false;
-        } else if(isPlayOneTurn && currentPos < P1STOREINDEX && playingBoard.get(currentPos).getNumSeeds() == 1
-                && playingBoard.get(getOpposingHouseIndex(currentPos)).getNumSeeds() != 0) { //Scen. 3
-            playingBoard.get(P1STOREINDEX).addSeeds(playingBoard.get(currentPos).captureSeeds() +
-                    playingBoard.get(getOpposingHouseIndex(currentPos)).captureSeeds());
-            isPlayOneTurn = false;
-        } else if(!isPlayOneTurn && currentPos > P1STOREINDEX && playingBoard.get(currentPos).getNumSeeds() == 1
-                && playingBoard.get(getOpposingHouseIndex(currentPos)).getNumSeeds() != 0) { //Scen. 4
-            playingBoard.get(P2STOREINDEX).addSeeds(playingBoard.get(currentPos).captureSeeds() +
-                    playingBoard.get(getOpposingHouseIndex(currentPos)).captureSeeds());
-            isPlayOneTurn = true;
-        } else isPlayOneTurn = !isPlayOneTurn; //Scen. 5
-        return isPlayOneTurn; //next Player's turn
+        int outcome = core.sow(startHouseIndex, isPlayOneTurn);
+        Metrics.recordMove(started, isPlayOneTurn, selectedHouse, outcome == BoardCore.EXTRA_TURN ? GameEngine.EXTRA_TURN
+                : outcome == BoardCore.CAPTURE ? GameEngine.CAPTURE : 0);
+        if(outcome == BoardCore.EXTRA_TURN) //Scen. 1
+            return isPlayOneTurn;
+        return !isPlayOneTurn; //Scen. 2 and 3, next Player's turn
     }
 
     /**
@@ -160,30 +140,17 @@ public class Board {
      * @return - the index of the house opposite
      */
     public int getOpposingHouseIndex(int currentPos) {
-        return -currentPos + (NUMHOUSES * 2);
+        return core.getOpposingHouseIndex(currentPos);
     }
 
     /**
-     * Checks whether or not the Board is empty on at least one side,
-     * indicates end of game.
+     * Checks whether or not the Houses of the Player to move are empty,
+     * indicates end of game. Reads the House totals the core keeps, so no Pit is visited.
      * @param isPlayOneTurn
      * @return
      */
     public boolean isBoardEmpty(boolean isPlayOneTurn) {
-        int p1SeedsRemaining = 0;
-        int p2SeedsRemaining = 0;
-
-        //iterate through each House of each Player
-        //SKIP the Store's
-        for(int i = 0; i < NUMHOUSES; i++) {
-            if(i != P1STOREINDEX) {
-                p1SeedsRemaining += playerOne.getPlayerPits().get(i).getNumSeeds();
-            }
-            if(i != P2STOREINDEX) {
-                p2SeedsRemaining += playerTwo.getPlayerPits().get(i).getNumSeeds();
-            }
-        }
-        return ((p1SeedsRemaining == 0 && isPlayOneTurn) || (p2SeedsRemaining == 0 && !isPlayOneTurn));
+        return core.getHouseTotal(isPlayOneTurn) == 0;
     }
 
     /**
@@ -199,10 +166,12 @@ public class Board {
         playerTwo.calcScore();
 
         Game_Outcome didPlayerOne;
+        int p1Score = playerOne.getScore();
+        int p2Score = playerTwo.getScore();
 
-        if(playerOne.getScore() > playerTwo.getScore())
+        if(p1Score > p2Score)
             didPlayerOne = Game_Outcome.WIN;
-        else if(playerOne.getScore() < playerTwo.getScore())
+        else if(p1Score < p2Score)
             didPlayerOne = Game_Outcome.LOSS;
         else //draw
             didPlayerOne = Game_Outcome.TIE;
@@ -225,6 +194,91 @@ public class Board {
         return playerTwo;
     }
 
+    /**
+     * Puts the board back to the start of a game, every House holding the starting seeds and
+     * both Stores empty
+     */
+    public void reset() {
+        for(int i = 0; i < BOARDSIZE; i++) {
+            core.setSeeds(i, (i == P1STOREINDEX || i == P2STOREINDEX) ? 0 : seedsPerHouse);
+        }
+    }
+
+    /**
+     * Writes a compact snapshot of the Board: the number of Houses and starting seeds per House
+     * as bytes, then every Pit's seeds as an unsigned short, P1's Houses, P1's Store, P2's
+     * Houses then P2's Store
+     * @param out - buffer to write to, with at least snapshotBytes(NUMHOUSES) remaining
+     */
+    public void writeSnapshot(ByteBuffer out) {
+        out.put((byte) NUMHOUSES).put((byte) seedsPerHouse);
+        for(int i = 0; i < BOARDSIZE; i++) {
+            out.putChar((char) core.getSeeds(i));
+        }
+    }
+
+    /**
+     * Creates a Board from a snapshot written by writeSnapshot
+     * @param in - buffer positioned at the snapshot, left after it
+     * @return - the Board
+     */
+    public static Board readSnapshot(ByteBuffer in) {
+        Board board = new Board(in.get() & 0xFF, in.get() & 0xFF);
+        for(int i = 0; i < board.BOARDSIZE; i++) {
+            board.core.setSeeds(i, in.getChar());
+        }
+        return board;
+    }
+
+    /**
+     * Finds the size of a snapshot
+     * @param numHouses - number of Houses belonging to each Player
+     * @return - bytes written by writeSnapshot
+     */
+    public static int snapshotBytes(int numHouses) {
+        return 2 + 2 * (numHouses * 2 + 2);
+    }
+
+    /**
+     * Retrieves the number of seeds each House starts the game with
+     * @return - seeds per House
+     */
+    public int getSeedsPerHouse() {
+        return seedsPerHouse;
+    }
+
+    /**
+     * Retrieves the core holding the seeds of every Pit on the Board
+     * @return BoardCore of this Board
+     */
+    BoardCore getCore() {
+        return core;
+    }
+
+    public int getNumHouses() {
+        return NUMHOUSES;
+    }
+
+    public int getSeeds(int index) {
+        return core.getSeeds(index);
+    }
+
+    public int getHouseTotal(boolean isPlayerOne) {
+        return core.getHouseTotal(isPlayerOne);
+    }
+
+    public long getHash(boolean isPlayOneTurn) {
+        return core.getHash(isPlayOneTurn);
+    }
+
+    public boolean endsInStore(int startHouseIndex, boolean isPlayOneTurn) {
+        return core.endsInStore(startHouseIndex, isPlayOneTurn);
+    }
+
+    public boolean leadsToCapture(int startHouseIndex, boolean isPlayOneTurn) {
+        return core.leadsToCapture(startHouseIndex, isPlayOneTurn);
+    }
+
     /**
      * Retrieves a specific Pit on the Board
      * @param index
@@ -241,47 +295,21 @@ public class Board {
      * @return - TRUE if move leads to extra turn
      */
     public boolean canRobotEndStore(int currentHouseIndex) {
-        return playingBoard.get(currentHouseIndex).getNumSeeds() == -currentHouseIndex + BOARDSIZE - 1;
+        return core.endsInStore(currentHouseIndex, false);
     }
 
     /**
      * This method checks to see whether the Robot will end its move with a capture of the opponents seeds.
-     * As seeds can be placed around the board during the turn that determine this outcome, a dummy board is
-     * created to simulate the move, before returning TRUE for the move to be executed on the real board.
+     * As seeds can be placed around the board during the turn that determine this outcome, the board's
+     * core works out where the final seed lands without changing the board, before returning TRUE for
+     * the move to be executed on the real board.
      * @param startHouseIndex - House of start of robot move
      * @param numSeedsToSow - seeds in start house
      * @param currentStateBoard - current playingBoard
      * @return - TRUE if move will end in a capture
      */
     public boolean canRobotCapture(int startHouseIndex, int numSeedsToSow, Board currentStateBoard) {
-        if(playingBoard.get(startHouseIndex).getNumSeeds() != 0) {
-            Board dummyBoard = new Board();
-            for(int i = 0; i < dummyBoard.BOARDSIZE; i++) {
-                dummyBoard.getPit(i).clonePit(currentStateBoard.getPit(i).getNumSeeds());
-            }
-
-            int moves = 1;
-            dummyBoard.playingBoard.get(startHouseIndex).emptyPit();
-            while(moves <= numSeedsToSow) {
-                //skip p1 store when p2 turn
-                if(startHouseIndex + moves == P1STOREINDEX) {
-                    moves++;
-                    numSeedsToSow++; //to account for jumping a move
-                }
-                //check if end of playingBoard has been reached, then restart at index 0 (p1 House 1)
-                if(startHouseIndex + moves == BOARDSIZE) {
-                    startHouseIndex -= (startHouseIndex + moves);
-                }
-                dummyBoard.playingBoard.get(startHouseIndex + moves).addSeeds(1);
-                moves++;
-            }
-
-            int indexOfFinalSeed = startHouseIndex + moves - 1;
-            boolean landsInOwnEmptyPit = (indexOfFinalSeed > NUMHOUSES && dummyBoard.playingBoard.get(indexOfFinalSeed).getNumSeeds() == 1);
-            boolean playerOneOpposingNotEmpty = dummyBoard.playingBoard.get(getOpposingHouseIndex(indexOfFinalSeed)).getNumSeeds() > 0;
-            return landsInOwnEmptyPit && playerOneOpposingNotEmpty;
-        }
-        return false;
+        return currentStateBoard.core.leadsToCapture(startHouseIndex, false);
     }
 
     /**
@@ -290,6 +318,6 @@ public class Board {
      * @return - TRUE if legal move found from that start house
      */
     public boolean doesRobotHaveLegalMove(int currentHouseIndex) {
-        return playingBoard.get(currentHouseIndex).getNumSeeds() != 0;
+        return core.getSeeds(currentHouseIndex) != 0;
     }
 }
\ No newline at end of file
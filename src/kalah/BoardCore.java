@@ -0,0 +1,367 @@
+package kalah;
+
+import java.util.Arrays;
+
+/**
+ * This class is the compact core of the playing board. Every Pit's seeds are held in a single
+ * flat int[] laid out as P1's Houses, P1's Store, P2's Houses, then P2's Store. The Board, Player
+ * and Pit classes are views over this array, so sowing never has to go through a Pit object.
+ * Moves can be tried with makeMove and taken back with unmakeMove, which restore the position
+ * from a preallocated history stack instead of building a dummy Board. A Zobrist hash of the
+ * pits is kept up to date as each seed lands, so positions can be identified by search code.
+ * The seeds in each Player's Houses are totalled the same way, so the end of the game and the
+ * scores are known without a recount.
+ * @author mpie374
+ */
+public class BoardCore implements BoardView {
+    public static final int NORMAL = 0;
+    public static final int EXTRA_TURN = 1;
+    public static final int CAPTURE = 2;
+    private static final int INITIAL_HISTORY_DEPTH = 32;
+    private static final int P1_HOUSES = 0;
+    private static final int P2_HOUSES = 1;
+    private static final int STORES = 2;
+
+    public final int NUMHOUSES;
+    public final int BOARDSIZE;
+    final int P1STOREINDEX;
+    final int P2STOREINDEX;
+    final int[] pits;
+    private final int[] sides; //total each pit counts towards, P1_HOUSES, P2_HOUSES or STORES
+    private final int[] totals = new int[3];
+    private long hash;
+    private int[] history; //saved positions, one BOARDSIZE block per move made
+    private long[] hashHistory;
+    private int[] totalHistory; //saved totals, one block of three per move made
+    private int historyDepth;
+
+    /**
+     * Creates an empty core for the given number of houses per player
+     * @param numHouses - number of houses belonging to each player
+     */
+    BoardCore(int numHouses) {
+        NUMHOUSES = numHouses;
+        BOARDSIZE = (NUMHOUSES * 2) + 2;
+        P1STOREINDEX = NUMHOUSES;
+        P2STOREINDEX = BOARDSIZE - 1;
+        pits = new int[BOARDSIZE];
+        sides = new int[BOARDSIZE];
+        for(int i = 0; i < BOARDSIZE; i++) {
+            sides[i] = i < P1STOREINDEX ? P1_HOUSES : (i == P1STOREINDEX || i == P2STOREINDEX) ? STORES : P2_HOUSES;
+        }
+        history = new int[BOARDSIZE * INITIAL_HISTORY_DEPTH];
+        hashHistory = new long[INITIAL_HISTORY_DEPTH];
+        totalHistory = new int[totals.length * INITIAL_HISTORY_DEPTH];
+        hash = computeHash();
+    }
+
+    /**
+     * Creates a core holding a copy of another core's position
+     * @param other - core to copy
+     */
+    BoardCore(BoardCore other) {
+        this(other.NUMHOUSES);
+        copyFrom(other);
+    }
+
+    /**
+     * Overwrites this core's position with another core's position of the same size.
+     * The move history is cleared.
+     * @param other - core to copy
+     */
+    public void copyFrom(BoardCore other) {
+        System.arraycopy(other.pits, 0, pits, 0, BOARDSIZE);
+        System.arraycopy(other.totals, 0, totals, 0, totals.length);
+        hash = other.hash;
+        historyDepth = 0;
+    }
+
+    /**
+     * Overwrites this core's position with any board's position of the same size.
+     * The move history is cleared.
+     * @param other - board to copy
+     */
+    public void copyFrom(BoardView other) {
+        if(other instanceof Board)
+            other = ((Board) other).getCore();
+        if(other instanceof BoardCore) {
+            copyFrom((BoardCore) other);
+            return;
+        }
+        for(int i = 0; i < BOARDSIZE; i++) {
+            setSeeds(i, other.getSeeds(i));
+        }
+        historyDepth = 0;
+    }
+
+    public int getNumHouses() {
+        return NUMHOUSES;
+    }
+
+    /**
+     * Retrieves the number of seeds in a pit
+     * @param index - index of the pit on the board
+     * @return - the number of seeds
+     */
+    public int getSeeds(int index) {
+        return pits[index];
+    }
+
+    /**
+     * Sets the number of seeds in a pit, keeping the hash and the House totals up to date
+     * @param index - index of the pit on the board
+     * @param seeds - the new number of seeds
+     */
+    public void setSeeds(int index, int seeds) {
+        hash ^= Zobrist.key(index, pits[index]) ^ Zobrist.key(index, seeds);
+        totals[sides[index]] += seeds - pits[index];
+        pits[index] = seeds;
+    }
+
+    /**
+     * Retrieves the Zobrist hash of the pits
+     * @return - hash of the position, not including the side to move
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Retrieves the Zobrist hash of the pits and the side to move
+     * @param isPlayOneTurn - TRUE if Player 1 is to move
+     * @return - hash identifying the position
+     */
+    public long getHash(boolean isPlayOneTurn) {
+        return isPlayOneTurn ? hash ^ Zobrist.PLAYER_ONE_TO_MOVE : hash;
+    }
+
+    /**
+     * Hashes every pit from scratch, used to check the incremental hash
+     * @return - hash of the position, not including the side to move
+     */
+    long computeHash() {
+        long fullHash = 0;
+        for(int i = 0; i < BOARDSIZE; i++) {
+            fullHash ^= Zobrist.key(i, pits[i]);
+        }
+        return fullHash;
+    }
+
+    /**
+     * Sows the seeds from the start house, skipping the opposing Player's Store, and applies the
+     * capture rule to the final seed. Uses the same rules as Board.sowSeeds, but every full lap of
+     * the board is added to each pit in one step, so only the remainder is sown seed by seed and
+     * the cost no longer grows with the number of seeds in the house.
+     * @param startHouseIndex - index of the house the move starts from
+     * @param isPlayOneTurn - TRUE if Player 1's turn
+     * @return - EXTRA_TURN if the last seed lands in the player's Store, CAPTURE if it
+     * captures the opposite house, otherwise NORMAL
+     */
+    public int sow(int startHouseIndex, boolean isPlayOneTurn) {
+        int skipIndex = isPlayOneTurn ? P2STOREINDEX : P1STOREINDEX;
+        int numSeedsToSow = pits[startHouseIndex];
+        int currentPos = startHouseIndex;
+        setSeeds(startHouseIndex, 0);
+
+        //a lap places one seed in every pit but the skipped Store, and ends back in the start house
+        int lapLength = BOARDSIZE - 1;
+        if(numSeedsToSow >= lapLength) {
+            int laps = numSeedsToSow / lapLength;
+            for(int i = 0; i < BOARDSIZE; i++) {
+                if(i != skipIndex) {
+                    int seeds = pits[i];
+                    hash ^= Zobrist.key(i, seeds) ^ Zobrist.key(i, seeds + laps);
+                    pits[i] = seeds + laps;
+                }
+            }
+            totals[P1_HOUSES] += laps * NUMHOUSES;
+            totals[P2_HOUSES] += laps * NUMHOUSES;
+            totals[STORES] += laps;
+            numSeedsToSow %= lapLength;
+        }
+
+        while(numSeedsToSow > 0) {
+            currentPos++;
+            //check if end of the board has been reached, then restart at index 0 (p1 House 1)
+            if(currentPos == BOARDSIZE)
+                currentPos = 0;
+            if(currentPos != skipIndex) {
+                int seeds = pits[currentPos];
+                hash ^= Zobrist.key(currentPos, seeds) ^ Zobrist.key(currentPos, seeds + 1);
+                pits[currentPos] = seeds + 1;
+                totals[sides[currentPos]]++;
+                numSeedsToSow--;
+            }
+        }
+        int outcome = finishMove(currentPos, isPlayOneTurn);
+        assert totalsMatchRecount() : "House totals out of step with the pits";
+        return outcome;
+    }
+
+    /**
+     * Saves the current position then plays the move, so it can be taken back with unmakeMove.
+     * No objects are allocated once the history stack has grown to the deepest line tried.
+     * @param startHouseIndex - index of the house the move starts from
+     * @param isPlayOneTurn - TRUE if Player 1's turn
+     * @return - outcome of the move, as for sow
+     */
+    public int makeMove(int startHouseIndex, boolean isPlayOneTurn) {
+        int offset = historyDepth * BOARDSIZE;
+        if(offset == history.length) {
+            history = Arrays.copyOf(history, history.length * 2);
+            hashHistory = Arrays.copyOf(hashHistory, hashHistory.length * 2);
+            totalHistory = Arrays.copyOf(totalHistory, totalHistory.length * 2);
+        }
+        System.arraycopy(pits, 0, history, offset, BOARDSIZE);
+        hashHistory[historyDepth] = hash;
+        System.arraycopy(totals, 0, totalHistory, historyDepth * totals.length, totals.length);
+        historyDepth++;
+        return sow(startHouseIndex, isPlayOneTurn);
+    }
+
+    /**
+     * Restores the position from before the most recent makeMove
+     */
+    public void unmakeMove() {
+        historyDepth--;
+        System.arraycopy(history, historyDepth * BOARDSIZE, pits, 0, BOARDSIZE);
+        hash = hashHistory[historyDepth];
+        System.arraycopy(totalHistory, historyDepth * totals.length, totals, 0, totals.length);
+    }
+
+    /**
+     * Checks whether the last seed of a move lands in the player's own Store, after any full laps
+     * @param startHouseIndex - index of the house the move starts from
+     * @param isPlayOneTurn - TRUE if Player 1's turn
+     * @return - TRUE if move leads to extra turn
+     */
+    public boolean endsInStore(int startHouseIndex, boolean isPlayOneTurn) {
+        int ownStoreIndex = isPlayOneTurn ? P1STOREINDEX : P2STOREINDEX;
+        //full laps end back in the start house, so only the remainder decides, as in sow.
+        //The opposing Store is never between a house and its own Store.
+        int numSeedsToSow = pits[startHouseIndex];
+        return numSeedsToSow != 0 && numSeedsToSow % (BOARDSIZE - 1) == ownStoreIndex - startHouseIndex;
+    }
+
+    /**
+     * Checks whether a move ends with a capture. The pit the final seed lands in and the seeds
+     * it and the opposite house will hold are worked out from the laps and the remainder, as in
+     * sow, so the position and its hash are only read.
+     * @param startHouseIndex - index of the house the move starts from
+     * @param isPlayOneTurn - TRUE if Player 1's turn
+     * @return - TRUE if move will end in a capture
+     */
+    public boolean leadsToCapture(int startHouseIndex, boolean isPlayOneTurn) {
+        int numSeedsToSow = pits[startHouseIndex];
+        if(numSeedsToSow == 0)
+            return false;
+        int skipIndex = isPlayOneTurn ? P2STOREINDEX : P1STOREINDEX;
+        int lapLength = BOARDSIZE - 1;
+        int laps = numSeedsToSow / lapLength;
+        int remainder = numSeedsToSow % lapLength;
+
+        int currentPos = startHouseIndex;
+        for(int left = remainder; left > 0;) {
+            currentPos++;
+            if(currentPos == BOARDSIZE)
+                currentPos = 0;
+            if(currentPos != skipIndex)
+                left--;
+        }
+        boolean inOwnHouse = isPlayOneTurn ? currentPos < P1STOREINDEX
+                : currentPos > P1STOREINDEX && currentPos < P2STOREINDEX;
+        if(!inOwnHouse)
+            return false;
+
+        int landedSeeds = (currentPos == startHouseIndex ? 0 : pits[currentPos]) + laps + (remainder > 0 ? 1 : 0);
+        int opposingIndex = getOpposingHouseIndex(currentPos);
+        int opposingSeeds = pits[opposingIndex] + laps
+                + (sowDistance(startHouseIndex, opposingIndex, skipIndex) <= remainder ? 1 : 0);
+        return landedSeeds == 1 && opposingSeeds != 0;
+    }
+
+    /**
+     * Counts the seeds sown from one pit until one lands in another, skipping a Store
+     * @param fromIndex - index of the house being sown from
+     * @param toIndex - index of the pit to reach, not the skipped Store
+     * @param skipIndex - index of the opposing Player's Store
+     * @return - number of seeds sown up to and including the one landing in toIndex
+     */
+    private int sowDistance(int fromIndex, int toIndex, int skipIndex) {
+        int distance = (toIndex - fromIndex + BOARDSIZE) % BOARDSIZE;
+        int skipDistance = (skipIndex - fromIndex + BOARDSIZE) % BOARDSIZE;
+        return skipDistance < distance ? distance - 1 : distance;
+    }
+
+    /**
+     * Checks the pit the final seed landed in for an extra turn or a capture
+     * @param currentPos - index of the pit the final seed landed in
+     * @param isPlayOneTurn - TRUE if Player 1's turn
+     * @return - outcome of the move
+     */
+    private int finishMove(int currentPos, boolean isPlayOneTurn) {
+        int ownStoreIndex = isPlayOneTurn ? P1STOREINDEX : P2STOREINDEX;
+        if(currentPos == ownStoreIndex)
+            return EXTRA_TURN;
+
+        boolean inOwnHouse = isPlayOneTurn ? currentPos < P1STOREINDEX : currentPos > P1STOREINDEX;
+        int opposingIndex = getOpposingHouseIndex(currentPos);
+        if(inOwnHouse && pits[currentPos] == 1 && pits[opposingIndex] != 0) {
+            setSeeds(ownStoreIndex, pits[ownStoreIndex] + pits[currentPos] + pits[opposingIndex]);
+            setSeeds(currentPos, 0);
+            setSeeds(opposingIndex, 0);
+            return CAPTURE;
+        }
+        return NORMAL;
+    }
+
+    /**
+     * Finds the house directly opposite the current position
+     * @param currentPos - current position on the board
+     * @return - the index of the house opposite
+     */
+    public int getOpposingHouseIndex(int currentPos) {
+        return -currentPos + (NUMHOUSES * 2);
+    }
+
+    /**
+     * Retrieves the seeds in one Player's Houses, not including their Store
+     * @param isPlayerOne - TRUE for Player 1's Houses
+     * @return - number of seeds remaining in that Player's Houses
+     */
+    public int getHouseTotal(boolean isPlayerOne) {
+        assert totalsMatchRecount() : "House totals out of step with the pits";
+        return totals[isPlayerOne ? P1_HOUSES : P2_HOUSES];
+    }
+
+    /**
+     * Retrieves the seeds in one Player's Store
+     * @param isPlayerOne - TRUE for Player 1's Store
+     * @return - number of seeds in that Player's Store
+     */
+    public int getStoreTotal(boolean isPlayerOne) {
+        return pits[isPlayerOne ? P1STOREINDEX : P2STOREINDEX];
+    }
+
+    /**
+     * Retrieves a Player's score if the game ended now, their Store plus the seeds left in
+     * their Houses
+     * @param isPlayerOne - TRUE for Player 1
+     * @return - the Player's score
+     */
+    public int getScore(boolean isPlayerOne) {
+        return getStoreTotal(isPlayerOne) + getHouseTotal(isPlayerOne);
+    }
+
+    /**
+     * Recounts the seeds in the Houses and Stores, used to check the running totals
+     * @return - TRUE if every total matches the pits
+     */
+    boolean totalsMatchRecount() {
+        int[] recount = new int[totals.length];
+        for(int i = 0; i < BOARDSIZE; i++) {
+            recount[sides[i]] += pits[i];
+        }
+        return Arrays.equals(recount, totals);
+    }
+}
@@ -0,0 +1,184 @@
+package kalah;
+
+import com.qualitascorpus.testsupport.IO;
+import java.io.IOException;
+
+/**
+ * Formats whole frames of the board into one reusable buffer. The fixed border rows are
+ * built once per board size, and seed counts come from a cache of padded digit strings, so
+ * a frame is drawn without any String concatenation. A frame can be written to an
+ * Appendable in a single write. The test IO does not allow newlines in its output, so for
+ * IO the frame is passed on one line at a time.
+ * Intermediate frames can be thinned out with a frame interval, or turned off entirely.
+ * @author mpie374
+ */
+public class BoardRenderer {
+    private static final String VERTICAL_BORDER = "+---------------+";
+    private static final String VERTICAL_DIVIDER = "+-------+-------+";
+    private static final String[] PADDED_SEEDS = new String[100];
+
+    static {
+        for(int seeds = 0; seeds < PADDED_SEEDS.length; seeds++) {
+            PADDED_SEEDS[seeds] = seeds < 10 ? " " + seeds : String.valueOf(seeds);
+        }
+    }
+
+    private final int numHouses;
+    private final String horizontalBorder;
+    private final String horizontalDivider;
+    private final String[] houseLabels; //"1[" to "N["
+    private final StringBuilder frame = new StringBuilder(512);
+    private final int[] lineEnds;
+    private final String[] fixedLines; //template of each line that never changes, or null
+    private int numLines;
+    private int frameInterval = 1;
+    private long frameCount;
+
+    /**
+     * Builds the templates for a board size
+     * @param numHouses - number of Houses per Player
+     */
+    public BoardRenderer(int numHouses) {
+        this.numHouses = numHouses;
+        StringBuilder border = new StringBuilder("+----+");
+        StringBuilder divider = new StringBuilder("|    |");
+        for(int i = 0; i < numHouses; i++) {
+            border.append("-------+");
+            divider.append(i < numHouses - 1 ? "-------+" : "-------|");
+        }
+        horizontalBorder = border.append("----+").toString();
+        horizontalDivider = divider.append("    |").toString();
+        houseLabels = new String[numHouses + 1];
+        for(int house = 1; house <= numHouses; house++) {
+            houseLabels[house] = house + "[";
+        }
+        lineEnds = new int[numHouses + 6];
+        fixedLines = new String[numHouses + 6];
+    }
+
+    /**
+     * Used to display the seeds on the board. Extra space required if single digit number.
+     * @param seeds - number of seeds
+     * @return - number of seeds padded to two characters
+     */
+    public static String padSeeds(int seeds) {
+        return seeds < PADDED_SEEDS.length ? PADDED_SEEDS[seeds] : String.valueOf(seeds);
+    }
+
+    /**
+     * Sets how often intermediate frames are drawn by drawFrame
+     * @param frameInterval - draw every frameInterval'th frame, 1 for all, 0 for none
+     */
+    public void setFrameInterval(int frameInterval) {
+        this.frameInterval = frameInterval;
+    }
+
+    /**
+     * Draws an intermediate frame, unless the frame interval skips it
+     * @param io - where the frame is written
+     * @param core - the position to draw
+     * @param vertical - TRUE for the vertical layout
+     */
+    public void drawFrame(IO io, BoardCore core, boolean vertical) {
+        long frameNumber = frameCount++;
+        if(frameInterval > 0 && frameNumber % frameInterval == 0)
+            draw(io, core, vertical);
+    }
+
+    /**
+     * Formats and writes a frame
+     * @param io - where the frame is written
+     * @param core - the position to draw
+     * @param vertical - TRUE for the vertical layout
+     */
+    public void draw(IO io, BoardCore core, boolean vertical) {
+        render(core, vertical);
+        int lineStart = 0;
+        for(int i = 0; i < numLines; i++) {
+            io.println(fixedLines[i] != null ? fixedLines[i] : frame.substring(lineStart, lineEnds[i]));
+            lineStart = lineEnds[i] + 1;
+        }
+    }
+
+    /**
+     * Formats a frame and writes it in a single append, lines separated by newlines
+     * @param out - where the frame is written
+     * @param core - the position to draw
+     * @param vertical - TRUE for the vertical layout
+     * @throws IOException if out can't be written to
+     */
+    public void draw(Appendable out, BoardCore core, boolean vertical) throws IOException {
+        render(core, vertical);
+        out.append(frame);
+    }
+
+    /**
+     * Formats a frame into the buffer
+     * @param core - the position to draw
+     * @param vertical - TRUE for the vertical layout
+     * @return - the formatted frame, valid until the next frame is rendered
+     */
+    public CharSequence render(BoardCore core, boolean vertical) {
+        frame.setLength(0);
+        numLines = 0;
+        if(vertical)
+            renderVertical(core);
+        else
+            renderHorizontal(core);
+        return frame;
+    }
+
+    /**
+     * Player 2's Houses are along the top row with their Store score in the bottom left.
+     * Player 1's Houses are along the bottom row with their Store score in the top right.
+     */
+    private void renderHorizontal(BoardCore core) {
+        fixedLine(horizontalBorder);
+        frame.append("| P2 |");
+        for(int i = 0; i < numHouses; i++) {
+            frame.append(' ').append(houseLabels[numHouses - i]).append(padSeeds(core.getSeeds(core.P2STOREINDEX - 1 - i))).append("] |");
+        }
+        frame.append(' ').append(padSeeds(core.getSeeds(core.P1STOREINDEX))).append(" |");
+        endLine();
+        fixedLine(horizontalDivider);
+        frame.append("| ").append(padSeeds(core.getSeeds(core.P2STOREINDEX))).append(" |");
+        for(int i = 0; i < numHouses; i++) {
+            frame.append(' ').append(houseLabels[i + 1]).append(padSeeds(core.getSeeds(i))).append("] |");
+        }
+        frame.append(" P1 |");
+        endLine();
+        fixedLine(horizontalBorder);
+    }
+
+    /**
+     * Player 2's Houses are located on the right, with Player 1's on the left.
+     */
+    private void renderVertical(BoardCore core) {
+        fixedLine(VERTICAL_BORDER);
+        frame.append("|       | P2 ").append(padSeeds(core.getSeeds(core.P2STOREINDEX))).append(" |");
+        endLine();
+        fixedLine(VERTICAL_DIVIDER);
+        for(int i = 0; i < numHouses; i++) {
+            frame.append("| ").append(houseLabels[i + 1]).append(padSeeds(core.getSeeds(i))).append("] | ")
+                    .append(houseLabels[numHouses - i]).append(padSeeds(core.getSeeds(core.P2STOREINDEX - 1 - i))).append("] |");
+            endLine();
+        }
+        fixedLine(VERTICAL_DIVIDER);
+        frame.append("| P1 ").append(padSeeds(core.getSeeds(core.P1STOREINDEX))).append(" |       |");
+        endLine();
+        fixedLine(VERTICAL_BORDER);
+    }
+
+    private void fixedLine(String line) {
+        frame.append(line);
+        fixedLines[numLines] = line;
+        lineEnds[numLines++] = frame.length();
+        frame.append('\n');
+    }
+
+    private void endLine() {
+        fixedLines[numLines] = null;
+        lineEnds[numLines++] = frame.length();
+        frame.append('\n');
+    }
+}
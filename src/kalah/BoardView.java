@@ -0,0 +1,52 @@
+package kalah;
+
+/**
+ * Read-only view of a playing board, given to robots so they can inspect the position without
+ * being able to change it. Pits are indexed as on BoardCore: Player 1's Houses, Player 1's
+ * Store, Player 2's Houses, then Player 2's Store.
+ * @author mpie374
+ */
+public interface BoardView {
+    /**
+     * Retrieves the number of Houses each Player has
+     * @return - Houses per Player
+     */
+    int getNumHouses();
+
+    /**
+     * Retrieves the number of seeds in a pit
+     * @param index - index of the pit on the board
+     * @return - the number of seeds
+     */
+    int getSeeds(int index);
+
+    /**
+     * Totals the seeds in one Player's Houses, not including their Store
+     * @param isPlayerOne - TRUE for Player 1's Houses
+     * @return - number of seeds remaining in that Player's Houses
+     */
+    int getHouseTotal(boolean isPlayerOne);
+
+    /**
+     * Retrieves the Zobrist hash of the pits and the side to move
+     * @param isPlayOneTurn - TRUE if Player 1 is to move
+     * @return - hash identifying the position
+     */
+    long getHash(boolean isPlayOneTurn);
+
+    /**
+     * Checks whether a move ends in the player's own Store
+     * @param startHouseIndex - index of the house the move starts from
+     * @param isPlayOneTurn - TRUE if Player 1's turn
+     * @return - TRUE if move leads to extra turn
+     */
+    boolean endsInStore(int startHouseIndex, boolean isPlayOneTurn);
+
+    /**
+     * Checks whether a move ends with a capture, without playing it
+     * @param startHouseIndex - index of the house the move starts from
+     * @param isPlayOneTurn - TRUE if Player 1's turn
+     * @return - TRUE if move will end in a capture
+     */
+    boolean leadsToCapture(int startHouseIndex, boolean isPlayOneTurn);
+}
@@ -0,0 +1,50 @@
+package kalah;
+
+/**
+ * Plays the opening book move while the game is still in the book, then hands over to another
+ * robot for the rest of the game.
+ * @author mpie374
+ */
+public class BookRobot implements Robot {
+    private final OpeningBook book;
+    private final Robot fallback;
+    private boolean lastFromBook;
+
+    /**
+     * Creates a robot that checks the book before the fallback robot
+     * @param book - opening book, loaded the first time it is used
+     * @param fallback - robot used for positions not in the book
+     */
+    public BookRobot(OpeningBook book, Robot fallback) {
+        this.book = book;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Plays the book move if the position is in the book, otherwise asks the fallback robot
+     * @param board - the current state of the playing board
+     * @param isPlayOneTurn - TRUE if the robot is playing as Player 1
+     * @return - the house number of the chosen move
+     */
+    public int chooseHouse(BoardView board, boolean isPlayOneTurn) {
+        int house = book.lookup(board, isPlayOneTurn);
+        lastFromBook = house != 0;
+        return lastFromBook ? house : fallback.chooseHouse(board, isPlayOneTurn);
+    }
+
+    public String getReason() {
+        return lastFromBook ? "it is the opening book move" : fallback.getReason();
+    }
+
+    public void startPondering(BoardView board, boolean isOpponentPlayOne) {
+        fallback.startPondering(board, isOpponentPlayOne);
+    }
+
+    public void stopPondering() {
+        fallback.stopPondering();
+    }
+
+    public void shutdown() {
+        fallback.shutdown();
+    }
+}
@@ -0,0 +1,549 @@
+package kalah;
+
+import com.qualitascorpus.testsupport.IO;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks the fast engines against the original rules in LegacyBoard. Each worker thread
+ * generates random move sequences from seeded generators. Board sizes and starting seeds vary,
+ * so sowing laps the board, and some moves pick empty Houses to exercise the retry rule. Every
+ * sequence is played on a LegacyBoard and on the candidate engine at the same time. After every
+ * move the pits, the side to move, the event flags and, at the end, the result are compared.
+ * The first divergence is shrunk to the fewest moves and seeds that still diverge, then printed
+ * with both boards at the move where they part.
+ * Candidates are core (BoardCore.makeMove), engine (GameEngine), board (Board.sowSeeds),
+ * batch (BatchEngine) and mutant, a deliberately broken core used to check the fuzzer itself.
+ * Usage: java kalah.DifferentialFuzzer [candidate|all] [sequences] [threads] [seed]
+ * @author mpie374
+ */
+public class DifferentialFuzzer {
+    private static final int MAX_MOVES = 1000;
+    private static final int ALL_EVENTS = GameEngine.EMPTY_HOUSE | GameEngine.EXTRA_TURN | GameEngine.CAPTURE | GameEngine.GAME_OVER;
+    private static final String[] CANDIDATES = {"core", "engine", "board", "batch"};
+
+    /**
+     * An engine being checked, playing one game at a time
+     */
+    interface Candidate {
+        /**
+         * Starts a new game, Player 1 to move
+         */
+        void start(int numHouses, int seedsPerHouse);
+
+        /**
+         * Plays the move of the player to move
+         * @param selectedHouse - house number from 1 to numHouses
+         * @return - GameEngine event flags
+         */
+        int play(int selectedHouse);
+
+        int getSeeds(int index);
+
+        boolean isPlayOneTurn();
+
+        boolean isGameOver();
+
+        Game_Outcome getOutcome();
+
+        /**
+         * Retrieves the event flags this engine can report, the others are not compared
+         */
+        default int getKnownEvents() {
+            return ALL_EVENTS;
+        }
+
+        /**
+         * Checks the engine's own invariants after a move
+         * @return - a description of what is wrong, or null
+         */
+        default String check() {
+            return null;
+        }
+    }
+
+    /**
+     * A board size and a list of house numbers to play from it
+     */
+    static class Sequence {
+        final int numHouses;
+        final int seedsPerHouse;
+        final int[] houses;
+
+        Sequence(int numHouses, int seedsPerHouse, int[] houses) {
+            this.numHouses = numHouses;
+            this.seedsPerHouse = seedsPerHouse;
+            this.houses = houses;
+        }
+
+        @Override
+        public String toString() {
+            return numHouses + " houses, " + seedsPerHouse + " seeds, moves " + Arrays.toString(houses);
+        }
+    }
+
+    /**
+     * Creates a fresh instance of a candidate engine
+     * @param name - core, engine, board, batch or mutant
+     * @return - the candidate
+     */
+    static Candidate candidate(String name) {
+        switch(name) {
+            case "core":
+                return new CoreCandidate();
+            case "engine":
+                return new EngineCandidate();
+            case "board":
+                return new BoardCandidate();
+            case "batch":
+                return new BatchCandidate();
+            case "mutant":
+                return new MutantCandidate();
+            default:
+                throw new IllegalArgumentException("Unknown candidate " + name);
+        }
+    }
+
+    /**
+     * Generates a random game, mostly from Houses with seeds in them but sometimes from any
+     * House, until it ends or reaches MAX_MOVES
+     * @param seed - seed of the sequence
+     * @return - the sequence
+     */
+    static Sequence generate(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int numHouses = random.nextInt(4) == 0 ? 1 + random.nextInt(9) : 6;
+        //mostly the usual few seeds, sometimes enough to lap the board more than once
+        int seedsPerHouse = random.nextInt(4) == 0 ? 1 + random.nextInt(3 * numHouses + 8) : 1 + random.nextInt(6);
+        LegacyBoard legacy = new LegacyBoard(numHouses, seedsPerHouse);
+        int[] houses = new int[MAX_MOVES];
+        int length = 0;
+        boolean isPlayOneTurn = true;
+        while(length < MAX_MOVES) {
+            int firstIndex = isPlayOneTurn ? 0 : numHouses + 1;
+            int house = 1 + random.nextInt(numHouses);
+            if(random.nextInt(8) != 0) {
+                while(legacy.getSeeds(firstIndex + house - 1) == 0) {
+                    house = house == numHouses ? 1 : house + 1;
+                }
+            }
+            houses[length++] = house;
+            int events = legacy.sowSeeds(isPlayOneTurn, house);
+            if((events & GameEngine.EMPTY_HOUSE) != 0)
+                continue;
+            if((events & GameEngine.EXTRA_TURN) == 0)
+                isPlayOneTurn = !isPlayOneTurn;
+            if(legacy.isBoardEmpty(isPlayOneTurn))
+                break;
+        }
+        return new Sequence(numHouses, seedsPerHouse, Arrays.copyOf(houses, length));
+    }
+
+    /**
+     * Plays a sequence on a LegacyBoard and a candidate, comparing them after every move.
+     * Moves after the legacy game ends are ignored.
+     * @param sequence - moves to play
+     * @param candidate - engine being checked
+     * @param report - if not null, the boards at the divergence are described here
+     * @return - index of the first move after which they differ, or -1 if they never do
+     */
+    static int firstDivergence(Sequence sequence, Candidate candidate, StringBuilder report) {
+        LegacyBoard legacy = new LegacyBoard(sequence.numHouses, sequence.seedsPerHouse);
+        candidate.start(sequence.numHouses, sequence.seedsPerHouse);
+        boolean isPlayOneTurn = true;
+        boolean gameOver = false;
+        for(int move = 0; move < sequence.houses.length && !gameOver; move++) {
+            int house = sequence.houses[move];
+            boolean mover = isPlayOneTurn;
+            int events = legacy.sowSeeds(isPlayOneTurn, house);
+            if((events & GameEngine.EMPTY_HOUSE) == 0) {
+                if((events & GameEngine.EXTRA_TURN) == 0)
+                    isPlayOneTurn = !isPlayOneTurn;
+                if(legacy.isBoardEmpty(isPlayOneTurn)) {
+                    gameOver = true;
+                    events |= GameEngine.GAME_OVER;
+                }
+            }
+            int candidateEvents = candidate.play(house);
+
+            String difference = null;
+            int known = candidate.getKnownEvents();
+            if((events & known) != (candidateEvents & known))
+                difference = "events " + events + " but candidate reported " + candidateEvents;
+            else if(candidate.isPlayOneTurn() != isPlayOneTurn)
+                difference = "Player " + (isPlayOneTurn ? 1 : 2) + " to move but candidate has Player " + (isPlayOneTurn ? 2 : 1);
+            else if(candidate.isGameOver() != gameOver)
+                difference = gameOver ? "game over but candidate plays on" : "candidate ended the game early";
+            if(difference == null) {
+                for(int i = 0; i < legacy.BOARDSIZE && difference == null; i++) {
+                    if(candidate.getSeeds(i) != legacy.getSeeds(i))
+                        difference = "pit " + i + " has " + legacy.getSeeds(i) + " seeds but candidate has " + candidate.getSeeds(i);
+                }
+            }
+            if(difference == null && gameOver && candidate.getOutcome() != legacy.getWinner())
+                difference = "result " + legacy.getWinner() + " but candidate has " + candidate.getOutcome();
+            if(difference == null)
+                difference = candidate.check();
+
+            if(difference != null) {
+                if(report != null) {
+                    report.append("  move ").append(move + 1).append(": Player ").append(mover ? 1 : 2)
+                            .append(" sows house ").append(house).append('\n');
+                    report.append("  ").append(difference).append('\n');
+                    StringBuilder pits = new StringBuilder();
+                    for(int i = 0; i < legacy.BOARDSIZE; i++) {
+                        pits.append(i == 0 ? "[" : ", ").append(candidate.getSeeds(i));
+                    }
+                    report.append("  legacy    ").append(legacy).append('\n');
+                    report.append("  candidate ").append(pits).append("]\n");
+                }
+                return move;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Shrinks a diverging sequence, first cutting it off at the divergence, then removing runs
+     * of moves, halving the run length when nothing more can go, and finally lowering the
+     * starting seeds while it still diverges
+     * @param sequence - a sequence that diverges
+     * @param candidate - engine being checked
+     * @return - a shorter sequence that still diverges
+     */
+    static Sequence shrink(Sequence sequence, Candidate candidate) {
+        Sequence smallest = shrinkMoves(sequence, candidate);
+        for(int seeds = smallest.seedsPerHouse - 1; seeds >= 1; seeds--) {
+            Sequence fewerSeeds = new Sequence(smallest.numHouses, seeds, smallest.houses);
+            if(firstDivergence(fewerSeeds, candidate, null) >= 0)
+                smallest = shrinkMoves(fewerSeeds, candidate);
+        }
+        return smallest;
+    }
+
+    private static Sequence shrinkMoves(Sequence sequence, Candidate candidate) {
+        int[] houses = Arrays.copyOf(sequence.houses, firstDivergence(sequence, candidate, null) + 1);
+        int run = Math.max(1, houses.length / 2);
+        while(true) {
+            boolean removed = false;
+            for(int from = 0; from + run <= houses.length; ) {
+                int[] trial = new int[houses.length - run];
+                System.arraycopy(houses, 0, trial, 0, from);
+                System.arraycopy(houses, from + run, trial, from, houses.length - from - run);
+                int divergence = firstDivergence(new Sequence(sequence.numHouses, sequence.seedsPerHouse, trial), candidate, null);
+                if(divergence >= 0) {
+                    houses = Arrays.copyOf(trial, divergence + 1);
+                    removed = true;
+                } else {
+                    from += run;
+                }
+            }
+            if(!removed) {
+                if(run == 1)
+                    break;
+                run /= 2;
+            }
+        }
+        return new Sequence(sequence.numHouses, sequence.seedsPerHouse, houses);
+    }
+
+    /**
+     * Checks one candidate on a number of sequences spread over worker threads, stopping at the
+     * first divergence
+     * @param name - candidate to check
+     * @param sequences - number of sequences to play
+     * @param threads - worker threads, each with its own candidate
+     * @param seed - seed the sequence seeds are derived from
+     * @return - TRUE if every sequence matched
+     * @throws Exception if a worker fails
+     */
+    static boolean fuzz(String name, long sequences, int threads, long seed) throws Exception {
+        AtomicLong nextSequence = new AtomicLong();
+        LongAdder movesChecked = new LongAdder();
+        AtomicReference<Sequence> failure = new AtomicReference<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for(int t = 0; t < threads; t++) {
+                workers.add(pool.submit(() -> {
+                    Candidate candidate = candidate(name);
+                    long index;
+                    while(failure.get() == null && (index = nextSequence.getAndIncrement()) < sequences) {
+                        Sequence sequence = generate(seed * 0x9E3779B97F4A7C15L + index);
+                        int divergence = firstDivergence(sequence, candidate, null);
+                        movesChecked.add(divergence >= 0 ? divergence + 1 : sequence.houses.length);
+                        if(divergence >= 0)
+                            failure.compareAndSet(null, sequence);
+                    }
+                    return null;
+                }));
+            }
+            for(Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long played = Math.min(nextSequence.get(), sequences);
+        System.out.printf("%-7s %10d sequences %12d moves %6.1f s %12.0f moves/s  %s%n", name, played,
+                movesChecked.sum(), seconds, movesChecked.sum() / seconds, failure.get() == null ? "OK" : "DIVERGED");
+
+        Sequence diverging = failure.get();
+        if(diverging == null)
+            return true;
+        Candidate candidate = candidate(name);
+        Sequence smallest = shrink(diverging, candidate);
+        StringBuilder report = new StringBuilder();
+        firstDivergence(smallest, candidate, report);
+        System.out.println("  found " + diverging.houses.length + " moves, shrunk to " + smallest);
+        System.out.print(report);
+        return false;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String name = args.length > 0 ? args[0] : "all";
+        long sequences = args.length > 1 ? Long.parseLong(args[1]) : 100000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        boolean matched = true;
+        for(String candidate : name.equals("all") ? CANDIDATES : new String[] {name}) {
+            matched &= fuzz(candidate, sequences, threads, seed);
+        }
+        if(!matched)
+            System.exit(1);
+    }
+
+    /**
+     * BoardCore.makeMove, also checking that unmakeMove restores the position and that the hash
+     * and House totals stay in step with the pits
+     */
+    private static class CoreCandidate implements Candidate {
+        protected BoardCore core;
+        protected boolean isPlayOneTurn;
+        private boolean gameOver;
+        private int[] before;
+        private String error;
+
+        public void start(int numHouses, int seedsPerHouse) {
+            core = new BoardCore(numHouses);
+            for(int i = 0; i < core.BOARDSIZE; i++) {
+                core.setSeeds(i, (i == core.P1STOREINDEX || i == core.P2STOREINDEX) ? 0 : seedsPerHouse);
+            }
+            before = new int[core.BOARDSIZE];
+            isPlayOneTurn = true;
+            gameOver = false;
+            error = null;
+        }
+
+        public int play(int selectedHouse) {
+            int startHouseIndex = isPlayOneTurn ? (selectedHouse - 1) : (selectedHouse + core.NUMHOUSES);
+            if(core.getSeeds(startHouseIndex) == 0)
+                return GameEngine.EMPTY_HOUSE;
+            System.arraycopy(core.pits, 0, before, 0, core.BOARDSIZE);
+            long hashBefore = core.getHash();
+            core.makeMove(startHouseIndex, isPlayOneTurn);
+            core.unmakeMove();
+            if(!Arrays.equals(before, core.pits) || core.getHash() != hashBefore || !core.totalsMatchRecount())
+                error = "unmakeMove did not restore the position";
+
+            int events = 0;
+            int outcome = core.makeMove(startHouseIndex, isPlayOneTurn);
+            if(outcome == BoardCore.EXTRA_TURN) {
+                events |= GameEngine.EXTRA_TURN;
+            } else {
+                if(outcome == BoardCore.CAPTURE)
+                    events |= GameEngine.CAPTURE;
+                isPlayOneTurn = !isPlayOneTurn;
+            }
+            if(core.getHouseTotal(isPlayOneTurn) == 0) {
+                gameOver = true;
+                events |= GameEngine.GAME_OVER;
+            }
+            return events;
+        }
+
+        public int getSeeds(int index) {
+            return core.getSeeds(index);
+        }
+
+        public boolean isPlayOneTurn() {
+            return isPlayOneTurn;
+        }
+
+        public boolean isGameOver() {
+            return gameOver;
+        }
+
+        public Game_Outcome getOutcome() {
+            int p1Score = core.getScore(true);
+            int p2Score = core.getScore(false);
+            return p1Score > p2Score ? Game_Outcome.WIN : p1Score < p2Score ? Game_Outcome.LOSS : Game_Outcome.TIE;
+        }
+
+        public String check() {
+            if(error != null)
+                return error;
+            if(core.getHash() != core.computeHash())
+                return "incremental hash differs from a full rehash";
+            if(!core.totalsMatchRecount())
+                return "House totals differ from a recount";
+            return null;
+        }
+    }
+
+    /**
+     * A core that wrongly gives the other player the turn after a move of exactly one lap, so
+     * the fuzzer can be seen to find and shrink a divergence
+     */
+    private static class MutantCandidate extends CoreCandidate {
+        public int play(int selectedHouse) {
+            int startHouseIndex = isPlayOneTurn ? (selectedHouse - 1) : (selectedHouse + core.NUMHOUSES);
+            boolean oneLap = core.getSeeds(startHouseIndex) == core.BOARDSIZE - 1;
+            int events = super.play(selectedHouse);
+            if(oneLap)
+                isPlayOneTurn = !isPlayOneTurn;
+            return events;
+        }
+    }
+
+    /**
+     * GameEngine over a Board
+     */
+    private static class EngineCandidate implements Candidate {
+        private GameEngine engine;
+
+        public void start(int numHouses, int seedsPerHouse) {
+            engine = new GameEngine(new Board(numHouses, seedsPerHouse), true);
+        }
+
+        public int play(int selectedHouse) {
+            return engine.play(selectedHouse);
+        }
+
+        public int getSeeds(int index) {
+            return engine.getBoard().getSeeds(index);
+        }
+
+        public boolean isPlayOneTurn() {
+            return engine.isPlayOneTurn();
+        }
+
+        public boolean isGameOver() {
+            return engine.isGameOver();
+        }
+
+        public Game_Outcome getOutcome() {
+            return engine.getOutcome();
+        }
+    }
+
+    /**
+     * Board.sowSeeds and isBoardEmpty driven the way Kalah.playTurn drives them. Board does not
+     * report captures, so only the other events are compared.
+     */
+    private static class BoardCandidate implements Candidate {
+        private Board board;
+        private boolean isPlayOneTurn;
+        private boolean gameOver;
+        private boolean emptyHouse;
+        private final IO io = new NullIO(0) {
+            public void println(String output) {
+                emptyHouse = true; //the only message sowSeeds prints
+            }
+        };
+
+        public void start(int numHouses, int seedsPerHouse) {
+            board = new Board(numHouses, seedsPerHouse);
+            isPlayOneTurn = true;
+            gameOver = false;
+        }
+
+        public int play(int selectedHouse) {
+            emptyHouse = false;
+            boolean mover = isPlayOneTurn;
+            isPlayOneTurn = board.sowSeeds(isPlayOneTurn, false, selectedHouse, io);
+            if(emptyHouse)
+                return GameEngine.EMPTY_HOUSE;
+            int events = isPlayOneTurn == mover ? GameEngine.EXTRA_TURN : 0;
+            if(board.isBoardEmpty(isPlayOneTurn)) {
+                gameOver = true;
+                events |= GameEngine.GAME_OVER;
+            }
+            return events;
+        }
+
+        public int getKnownEvents() {
+            return ALL_EVENTS & ~GameEngine.CAPTURE;
+        }
+
+        public int getSeeds(int index) {
+            return board.getSeeds(index);
+        }
+
+        public boolean isPlayOneTurn() {
+            return isPlayOneTurn;
+        }
+
+        public boolean isGameOver() {
+            return gameOver;
+        }
+
+        public Game_Outcome getOutcome() {
+            //scored twice, as a second call must not change the result
+            board.getWinner();
+            return board.getWinner();
+        }
+    }
+
+    /**
+     * BatchEngine with a single game in its batch
+     */
+    private static class BatchCandidate implements Candidate {
+        private BatchEngine batch;
+        private final int[] houses = new int[1];
+        private final int[] events = new int[1];
+
+        public void start(int numHouses, int seedsPerHouse) {
+            batch = new BatchEngine(1, numHouses, seedsPerHouse);
+        }
+
+        public int play(int selectedHouse) {
+            houses[0] = selectedHouse;
+            batch.play(houses, events);
+            return events[0];
+        }
+
+        public int getSeeds(int index) {
+            return batch.getSeeds(0, index);
+        }
+
+        public boolean isPlayOneTurn() {
+            return batch.isPlayOneTurn(0);
+        }
+
+        public boolean isGameOver() {
+            return batch.isGameOver(0);
+        }
+
+        public Game_Outcome getOutcome() {
+            int p1Score = 0;
+            int p2Score = 0;
+            for(int i = 0; i <= batch.NUMHOUSES; i++) {
+                p1Score += batch.getSeeds(0, i);
+                p2Score += batch.getSeeds(0, batch.NUMHOUSES + 1 + i);
+            }
+            return p1Score > p2Score ? Game_Outcome.WIN : p1Score < p2Score ? Game_Outcome.LOSS : Game_Outcome.TIE;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package kalah;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Exact values of every position with at most a set number of seeds left in the Houses.
+ * The future of a position only depends on its Houses and the side to move, so a value is
+ * the number of seeds the side to move will gain over the opponent from here with best play.
+ * Positions are stored from the mover's point of view (mover's Houses first), so one table
+ * covers both sides. Each configuration is ranked to a dense index by a PositionCodec, grouped
+ * by the number of seeds left, and its value is stored as one byte.
+ * The database is generated once with the same rules as Board.sowSeeds, solving positions
+ * level by level from the empty board upwards, and written to a file that is memory-mapped
+ * at startup so lookups read straight from the mapped file with no heap copy.
+ * Usage: java kalah.EndgameDatabase generate file numHouses seedCap
+ *        java kalah.EndgameDatabase verify file samples
+ * @author mpie374
+ */
+public class EndgameDatabase {
+    private static final int MAGIC = 0x4B444231; //"KDB1"
+    private static final int HEADER_BYTES = 12;
+    private static final byte UNSOLVED = Byte.MIN_VALUE;
+
+    private final int numHouses;
+    private final int seedCap;
+    private final PositionCodec codec;
+    private final ByteBuffer values;
+    private final int[] canonical; //scratch configuration used for lookups
+
+    /**
+     * Creates a database over a buffer of values
+     */
+    private EndgameDatabase(int numHouses, int seedCap, ByteBuffer values) {
+        this.numHouses = numHouses;
+        this.seedCap = seedCap;
+        this.codec = new PositionCodec(numHouses * 2, seedCap);
+        this.values = values;
+        this.canonical = new int[numHouses * 2];
+    }
+
+    /**
+     * Memory-maps a database file
+     * @param file - file written by generate
+     * @return - the database
+     * @throws IOException if the file can't be read or is not a database
+     */
+    public static EndgameDatabase open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt(0) != MAGIC)
+                throw new IOException(file + " is not an endgame database");
+            int numHouses = buffer.getInt(4);
+            int seedCap = buffer.getInt(8);
+            buffer.position(HEADER_BYTES);
+            return new EndgameDatabase(numHouses, seedCap, buffer.slice());
+        }
+    }
+
+    /**
+     * Checks whether a position is in the database
+     * @param core - the position
+     * @return - TRUE if the board size matches and few enough seeds are left in the Houses
+     */
+    public boolean covers(BoardCore core) {
+        return core.NUMHOUSES == numHouses && core.getHouseTotal(true) + core.getHouseTotal(false) <= seedCap;
+    }
+
+    /**
+     * Looks up the value of a covered position. Not thread safe, each thread should open its
+     * own copy of the database.
+     * @param core - the position
+     * @param isPlayOneTurn - side to move
+     * @return - seeds the side to move will gain over the opponent from here with best play
+     */
+    public int lookup(BoardCore core, boolean isPlayOneTurn) {
+        int moverFirst = isPlayOneTurn ? 0 : numHouses + 1;
+        int opponentFirst = isPlayOneTurn ? numHouses + 1 : 0;
+        for(int i = 0; i < numHouses; i++) {
+            canonical[i] = core.getSeeds(moverFirst + i);
+            canonical[numHouses + i] = core.getSeeds(opponentFirst + i);
+        }
+        return values.get((int) codec.index(canonical));
+    }
+
+    /**
+     * Creates another database over the same mapped file, for use by another thread
+     * @return - a database sharing this one's values
+     */
+    public EndgameDatabase copy() {
+        return new EndgameDatabase(numHouses, seedCap, values);
+    }
+
+    public int getNumHouses() {
+        return numHouses;
+    }
+
+    public int getSeedCap() {
+        return seedCap;
+    }
+
+    /**
+     * Solves every position with up to seedCap seeds left in the Houses and writes the file
+     * @param file - file to write
+     * @param numHouses - number of Houses per Player
+     * @param seedCap - most seeds left in the Houses
+     * @throws IOException if the file can't be written
+     */
+    public static void generate(Path file, int numHouses, int seedCap) throws IOException {
+        if(seedCap > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("Seed cap " + seedCap + " does not fit a one byte value");
+        long size = new PositionCodec(numHouses * 2, seedCap).size();
+        if(size > Integer.MAX_VALUE - HEADER_BYTES)
+            throw new IllegalArgumentException("Seed cap " + seedCap + " is too large to map");
+        byte[] solved = new byte[(int) size];
+        Arrays.fill(solved, UNSOLVED);
+        new Solver(new EndgameDatabase(numHouses, seedCap, ByteBuffer.wrap(solved)), solved).solveAll();
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(numHouses);
+            out.writeInt(seedCap);
+            out.write(solved);
+        }
+    }
+
+    /**
+     * Solves positions by trying every move and reading the values of the positions they
+     * lead to. A move either moves seeds into a Store, so the position has fewer seeds left and
+     * was solved in an earlier level, or keeps every seed on the mover's side moving towards
+     * the Store, so the same level can't loop back on itself and is solved depth first.
+     */
+    private static class Solver {
+        private final EndgameDatabase database;
+        private final byte[] solved;
+        private final int numHouses;
+        private final ArrayList<BoardCore> cores = new ArrayList<>();
+        private final ArrayList<int[]> configs = new ArrayList<>();
+
+        Solver(EndgameDatabase database, byte[] solved) {
+            this.database = database;
+            this.solved = solved;
+            this.numHouses = database.numHouses;
+        }
+
+        void solveAll() {
+            int[] config = new int[numHouses * 2];
+            for(int total = 0; total <= database.seedCap; total++) {
+                long levelSize = database.codec.count(total);
+                for(long rank = 0; rank < levelSize; rank++) {
+                    if(solved[(int) (database.codec.levelOffset(total) + rank)] == UNSOLVED) {
+                        database.codec.unrank(rank, total, config, 0);
+                        solve(config, 0);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Finds the value of a configuration, solving the positions it leads to first if needed
+         * @param config - seeds in each House, mover's Houses first
+         * @param level - recursion depth, selects the scratch board used
+         * @return - seeds the mover will gain over the opponent with best play
+         */
+        private int solve(int[] config, int level) {
+            int index = (int) database.codec.index(config);
+            if(solved[index] != UNSOLVED)
+                return solved[index];
+
+            while(cores.size() <= level) {
+                cores.add(new BoardCore(numHouses));
+                configs.add(new int[numHouses * 2]);
+            }
+            BoardCore core = cores.get(level);
+            int[] child = configs.get(level);
+            for(int i = 0; i < numHouses; i++) {
+                core.setSeeds(i, config[i]);
+                core.setSeeds(numHouses + 1 + i, config[numHouses + i]);
+            }
+            core.setSeeds(core.P1STOREINDEX, 0);
+            core.setSeeds(core.P2STOREINDEX, 0);
+
+            int value;
+            if(core.getHouseTotal(true) == 0) {
+                //game over, the opponent keeps the seeds left in their Houses
+                value = -core.getHouseTotal(false);
+            } else {
+                value = Integer.MIN_VALUE;
+                for(int house = 0; house < numHouses; house++) {
+                    if(core.getSeeds(house) == 0)
+                        continue;
+                    boolean extraTurn = core.makeMove(house, true) == BoardCore.EXTRA_TURN;
+                    int gain = core.getSeeds(core.P1STOREINDEX);
+                    for(int i = 0; i < numHouses; i++) {
+                        int moverSeeds = core.getSeeds(i);
+                        int opponentSeeds = core.getSeeds(numHouses + 1 + i);
+                        child[extraTurn ? i : numHouses + i] = moverSeeds;
+                        child[extraTurn ? numHouses + i : i] = opponentSeeds;
+                    }
+                    core.unmakeMove();
+                    //deeper levels use their own boards, so this board is unchanged by the call
+                    int childValue = solve(child, level + 1);
+                    int moveValue = gain + (extraTurn ? childValue : -childValue);
+                    if(moveValue > value)
+                        value = moveValue;
+                }
+            }
+            solved[index] = (byte) value;
+            return value;
+        }
+    }
+
+    /**
+     * Exact value of a position found by searching every line to the end of the game,
+     * used to check the database
+     * @param core - the position, with empty Stores
+     * @param isPlayOneTurn - side to move
+     * @return - seeds the side to move will gain over the opponent from here
+     */
+    static int bruteForce(BoardCore core, boolean isPlayOneTurn) {
+        int ownStore = isPlayOneTurn ? core.P1STOREINDEX : core.P2STOREINDEX;
+        int opponentStore = isPlayOneTurn ? core.P2STOREINDEX : core.P1STOREINDEX;
+        if(core.getHouseTotal(isPlayOneTurn) == 0)
+            return -core.getHouseTotal(!isPlayOneTurn);
+
+        int firstIndex = isPlayOneTurn ? 0 : core.NUMHOUSES + 1;
+        int best = Integer.MIN_VALUE;
+        for(int i = firstIndex; i < firstIndex + core.NUMHOUSES; i++) {
+            if(core.getSeeds(i) == 0)
+                continue;
+            int storesBefore = core.getSeeds(ownStore) - core.getSeeds(opponentStore);
+            boolean extraTurn = core.makeMove(i, isPlayOneTurn) == BoardCore.EXTRA_TURN;
+            int gain = core.getSeeds(ownStore) - core.getSeeds(opponentStore) - storesBefore;
+            int value = gain + (extraTurn ? bruteForce(core, isPlayOneTurn) : -bruteForce(core, !isPlayOneTurn));
+            core.unmakeMove();
+            best = Math.max(best, value);
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length == 4 && args[0].equals("generate")) {
+            long start = System.nanoTime();
+            generate(Paths.get(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            System.out.printf("Generated %s in %.1f s%n", args[1], (System.nanoTime() - start) / 1e9);
+        } else if(args.length == 3 && args[0].equals("verify")) {
+            EndgameDatabase database = open(Paths.get(args[1]));
+            int samples = Integer.parseInt(args[2]);
+            int mismatches = verify(database, samples, new SplittableRandom(1));
+            System.out.println("Checked " + samples + " positions, " + mismatches + " mismatches");
+            if(mismatches > 0)
+                System.exit(1);
+        } else {
+            System.out.println("Usage: EndgameDatabase generate file numHouses seedCap");
+            System.out.println("       EndgameDatabase verify file samples");
+        }
+    }
+
+    /**
+     * Compares database lookups with brute force search on random covered positions
+     * @return - number of positions where they disagree
+     */
+    static int verify(EndgameDatabase database, int samples, SplittableRandom random) {
+        int mismatches = 0;
+        BoardCore core = new BoardCore(database.numHouses);
+        int[] config = new int[database.numHouses * 2];
+        for(int sample = 0; sample < samples; sample++) {
+            int total = random.nextInt(database.seedCap + 1);
+            long rank = random.nextLong(database.codec.count(total));
+            database.codec.unrank(rank, total, config, 0);
+            for(int i = 0; i < database.numHouses; i++) {
+                core.setSeeds(i, config[i]);
+                core.setSeeds(database.numHouses + 1 + i, config[database.numHouses + i]);
+            }
+            core.setSeeds(core.P1STOREINDEX, 0);
+            core.setSeeds(core.P2STOREINDEX, 0);
+            boolean isPlayOneTurn = random.nextBoolean();
+            if(database.lookup(core, isPlayOneTurn) != bruteForce(core, isPlayOneTurn))
+                mismatches++;
+        }
+        return mismatches;
+    }
+}
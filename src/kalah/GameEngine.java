@@ -0,0 +1,173 @@
+package kalah;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Headless game flow over a Board. It takes one house number per move and reports what
+ * happened as a set of event flags, without building strings or doing any IO, so simulators
+ * can drive games directly and Kalah only has to render the events.
+ * @author mpie374
+ */
+public class GameEngine {
+    public static final int EMPTY_HOUSE = 1; //move rejected, the same player must choose again
+    public static final int EXTRA_TURN = 2;
+    public static final int CAPTURE = 4;
+    public static final int GAME_OVER = 8;
+
+    private final Board board;
+    private final BoardCore core;
+    private boolean isPlayOneTurn;
+    private boolean gameOver;
+    private GameRecordWriter recorder;
+
+    /**
+     * Creates an engine for a new game on the standard board, Player 1 to move
+     */
+    public GameEngine() {
+        this(new Board(), true);
+    }
+
+    /**
+     * Creates an engine that continues a game on an existing board
+     * @param board - the playing board
+     * @param isPlayOneTurn - TRUE if Player 1 is to move
+     */
+    public GameEngine(Board board, boolean isPlayOneTurn) {
+        this.board = board;
+        this.core = board.getCore();
+        this.isPlayOneTurn = isPlayOneTurn;
+        this.gameOver = core.getHouseTotal(isPlayOneTurn) == 0;
+    }
+
+    /**
+     * Plays the current player's move from the selected house. Uses the same rules as
+     * Board.sowSeeds, and the game ends when the next player has no seeds in their Houses.
+     * @param selectedHouse - house number from 1 to NUMHOUSES
+     * @return - event flags: EMPTY_HOUSE, or any of EXTRA_TURN, CAPTURE and GAME_OVER
+     */
+    public int play(int selectedHouse) {
+        if(gameOver)
+            throw new IllegalStateException("The game is over");
+        long started = Metrics.start();
+        boolean mover = isPlayOneTurn;
+        int startHouseIndex = isPlayOneTurn ? (selectedHouse - 1) : (selectedHouse + core.NUMHOUSES);
+        if(core.getSeeds(startHouseIndex) == 0) {
+            Metrics.recordMove(started, mover, selectedHouse, EMPTY_HOUSE);
+            return EMPTY_HOUSE;
+        }
+
+        int events = 0;
+        int outcome = core.sow(startHouseIndex, isPlayOneTurn);
+        if(recorder != null)
+            recorder.recordMove(selectedHouse);
+        if(outcome == BoardCore.EXTRA_TURN) {
+            events |= EXTRA_TURN;
+        } else {
+            if(outcome == BoardCore.CAPTURE)
+                events |= CAPTURE;
+            isPlayOneTurn = !isPlayOneTurn;
+        }
+        if(core.getHouseTotal(isPlayOneTurn) == 0) {
+            gameOver = true;
+            events |= GAME_OVER;
+            if(recorder != null)
+                recorder.endGame(false);
+        }
+        Metrics.recordMove(started, mover, selectedHouse, events);
+        return events;
+    }
+
+    /**
+     * Records that a player quit before the game was over. The board is left as it is so it
+     * can still be displayed.
+     */
+    public void quit() {
+        if(!gameOver && recorder != null)
+            recorder.endGame(true);
+    }
+
+    /**
+     * Sets the writer each move and the end of each game are recorded to
+     * @param recorder - game record writer, or null for none
+     */
+    public void setRecorder(GameRecordWriter recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Starts a new game on the same board, Player 1 to move
+     */
+    public void reset() {
+        board.reset();
+        isPlayOneTurn = true;
+        gameOver = false;
+    }
+
+    /**
+     * Writes a compact snapshot of the game, the side to move as one byte then the Board's
+     * snapshot
+     * @param out - buffer to write to, with at least snapshotBytes remaining
+     */
+    public void writeSnapshot(ByteBuffer out) {
+        out.put((byte) (isPlayOneTurn ? 1 : 0));
+        board.writeSnapshot(out);
+    }
+
+    /**
+     * Creates an engine that continues the game in a snapshot written by writeSnapshot
+     * @param in - buffer positioned at the snapshot, left after it
+     * @return - the engine
+     */
+    public static GameEngine readSnapshot(ByteBuffer in) {
+        boolean isPlayOneTurn = in.get() != 0;
+        return new GameEngine(Board.readSnapshot(in), isPlayOneTurn);
+    }
+
+    /**
+     * Finds the size of a snapshot
+     * @param numHouses - number of Houses belonging to each Player
+     * @return - bytes written by writeSnapshot
+     */
+    public static int snapshotBytes(int numHouses) {
+        return 1 + Board.snapshotBytes(numHouses);
+    }
+
+    /**
+     * Checks whose turn it is
+     * @return - TRUE if Player 1 is to move
+     */
+    public boolean isPlayOneTurn() {
+        return isPlayOneTurn;
+    }
+
+    /**
+     * Checks whether the player to move has run out of seeds
+     * @return - TRUE if the game has ended
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Finds the result of the game so far, where each Player's score is their Store plus the
+     * seeds left in their Houses. Unlike Board.getWinner it does not change the Players' scores.
+     * @return - the Game_Outcome for Player 1
+     */
+    public Game_Outcome getOutcome() {
+        int p1Score = core.getScore(true);
+        int p2Score = core.getScore(false);
+        if(p1Score > p2Score)
+            return Game_Outcome.WIN;
+        else if(p1Score < p2Score)
+            return Game_Outcome.LOSS;
+        return Game_Outcome.TIE;
+    }
+
+    /**
+     * Retrieves the board being played on
+     * @return - the playing board
+     */
+    public Board getBoard() {
+        return board;
+    }
+}
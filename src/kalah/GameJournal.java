@@ -0,0 +1,502 @@
+package kalah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of the games hosted by a GameServer, so they survive a restart. Each
+ * session records a snapshot of its game when it starts and every SNAPSHOT_INTERVAL moves
+ * after, each move it plays, and its end when the client quits.
+ * Records are appended to an in-memory batch. A committer thread copies each batch into the
+ * journal file through a memory-mapped window, so many moves share one commit (group commit).
+ * Records that arrive while a batch is being written go in the next one, so batches grow with
+ * the load and a quiet journal commits straight away. Each batch is framed by its length and a
+ * CRC32C. A batch cut short by a crash fails its check, and everything from there on is ignored.
+ * Opening a journal reads every whole batch. Each live game is rebuilt from its last snapshot
+ * and the moves after it, and new batches are appended after the last good one. If most of the
+ * file is history, it is first compacted to one snapshot per live game, so the next open reads
+ * the games still live rather than every batch since the journal was created.
+ * Usage: java kalah.GameJournal bench file sessions movesPerSession...
+ * @author mpie374
+ */
+public class GameJournal implements Closeable {
+    public static final int SNAPSHOT_INTERVAL = 64;
+    private static final int MAGIC = 0x4B4A4E31; //"KJN1"
+    private static final int HEADER_BYTES = 8;
+    private static final int BATCH_HEADER_BYTES = 8; //length then CRC32C of the records
+    private static final int BATCH_BYTES = 1 << 20;
+    private static final int WINDOW_BYTES = 64 << 20;
+    private static final byte MOVE = 1;
+    private static final byte SNAPSHOT = 2;
+    private static final byte END = 3;
+
+    private FileChannel channel; //replaced once if the journal is compacted when opened
+    private final boolean force;
+    private final Map<Long, GameEngine> restored;
+    private long lastSession; //highest session number read from the journal
+    private MappedByteBuffer window;
+    private long windowStart;
+    private volatile long position; //file offset of the next batch
+
+    private final Object lock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(BATCH_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(BATCH_BYTES);
+    private long pendingBatch = 1; //number the pending batch will have once committed
+    private long committedBatch;
+    private boolean closed;
+    private final CRC32C crc = new CRC32C();
+    private final Thread committer;
+
+    /**
+     * Opens a journal, creating it if needed, and restores the games recorded in it
+     * @param file - journal file
+     * @param force - TRUE to force every batch to the storage device before it counts as
+     * committed, FALSE to only copy it into the mapped file, which survives the process dying
+     * but not the machine
+     * @throws IOException if the file can't be opened or is not a journal
+     */
+    public GameJournal(Path file, boolean force) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.force = force;
+        try {
+            if(channel.size() == 0) {
+                mapWindow(0, HEADER_BYTES);
+                window.putInt(0, MAGIC);
+                position = HEADER_BYTES;
+                restored = new LinkedHashMap<>();
+            } else {
+                mapWindow(0, HEADER_BYTES);
+                if(window.getInt(0) != MAGIC)
+                    throw new IOException(file + " is not a game journal");
+                restored = restore();
+                //drop what follows the last good batch, so a torn batch can't be read back later
+                window = null;
+                channel.truncate(position);
+                if(position > 2 * compactedSize())
+                    compact(file);
+            }
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.committer = new Thread(this::commitBatches, "kalah-journal");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Records a move
+     * @param session - session number
+     * @param house - house number that was played
+     * @return - ticket to wait on with awaitCommit
+     */
+    public long recordMove(long session, int house) {
+        synchronized(lock) {
+            reserve(10);
+            pending.put(MOVE).putLong(session).put((byte) house);
+            return pendingBatch;
+        }
+    }
+
+    /**
+     * Records a snapshot of a session's game, which replaces everything recorded for the
+     * session before it
+     * @param session - session number
+     * @param engine - the game
+     * @return - ticket to wait on with awaitCommit
+     */
+    public long recordSnapshot(long session, GameEngine engine) {
+        synchronized(lock) {
+            reserve(9 + GameEngine.snapshotBytes(engine.getBoard().NUMHOUSES));
+            pending.put(SNAPSHOT).putLong(session);
+            engine.writeSnapshot(pending);
+            return pendingBatch;
+        }
+    }
+
+    /**
+     * Records that a session has ended, so it isn't restored
+     * @param session - session number
+     * @return - ticket to wait on with awaitCommit
+     */
+    public long recordEnd(long session) {
+        synchronized(lock) {
+            reserve(9);
+            pending.put(END).putLong(session);
+            return pendingBatch;
+        }
+    }
+
+    /**
+     * Makes room in the pending batch, waiting for the committer to take it if it is full
+     */
+    private void reserve(int bytes) {
+        if(closed)
+            throw new IllegalStateException("The journal is closed");
+        boolean interrupted = false;
+        while(pending.remaining() < bytes) {
+            lock.notifyAll();
+            try {
+                lock.wait();
+            } catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+        if(pending.position() == 0)
+            lock.notifyAll(); //wake the committer for the first record of a batch
+    }
+
+    /**
+     * Waits until the batch holding a record has been committed
+     * @param ticket - ticket returned when the record was made
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitCommit(long ticket) throws InterruptedException {
+        synchronized(lock) {
+            while(committedBatch < ticket) {
+                if(closed && !committer.isAlive())
+                    throw new IllegalStateException("The journal is closed");
+                lock.wait();
+            }
+        }
+    }
+
+    /**
+     * Runs on the committer thread, taking each pending batch and writing it to the file
+     */
+    private void commitBatches() {
+        while(true) {
+            ByteBuffer batch;
+            long batchNumber;
+            synchronized(lock) {
+                while(pending.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch(InterruptedException e) {
+                        //keep committing until closed
+                    }
+                }
+                if(pending.position() == 0)
+                    return;
+                batch = pending;
+                pending = spare;
+                spare = null;
+                batchNumber = pendingBatch++;
+            }
+            batch.flip();
+            write(batch);
+            batch.clear();
+            synchronized(lock) {
+                spare = batch;
+                committedBatch = batchNumber;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void write(ByteBuffer batch) {
+        int length = batch.remaining();
+        crc.reset();
+        crc.update(batch.duplicate());
+        try {
+            mapWindow(position, BATCH_HEADER_BYTES + length);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int offset = (int) (position - windowStart);
+        //the length is written last, so a batch is not seen until all of it is in place
+        window.putInt(offset + 4, (int) crc.getValue());
+        window.put(offset + BATCH_HEADER_BYTES, batch, batch.position(), length);
+        window.putInt(offset, length);
+        if(force)
+            window.force(offset, BATCH_HEADER_BYTES + length);
+        position += BATCH_HEADER_BYTES + length;
+    }
+
+    /**
+     * Maps the window of the file holding a range, unless the current window already does
+     */
+    private void mapWindow(long offset, int length) throws IOException {
+        if(window != null && offset >= windowStart && offset + length <= windowStart + window.capacity())
+            return;
+        window = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.max(WINDOW_BYTES, length));
+        windowStart = offset;
+    }
+
+    /**
+     * Reads every whole batch from the start of the journal and rebuilds each live game from
+     * its last snapshot and the moves recorded after it
+     * @return - the games by session number
+     */
+    private Map<Long, GameEngine> restore() throws IOException {
+        //last snapshot and the moves after it, per session
+        Map<Long, byte[]> snapshots = new HashMap<>();
+        Map<Long, int[]> tails = new HashMap<>();
+        position = HEADER_BYTES;
+        while(position + BATCH_HEADER_BYTES <= channel.size()) {
+            mapWindow(position, BATCH_HEADER_BYTES);
+            int offset = (int) (position - windowStart);
+            int length = window.getInt(offset);
+            if(length <= 0 || length > BATCH_BYTES || position + BATCH_HEADER_BYTES + length > channel.size())
+                break;
+            int checksum = window.getInt(offset + 4);
+            mapWindow(position, BATCH_HEADER_BYTES + length);
+            offset = (int) (position - windowStart);
+            ByteBuffer records = window.duplicate();
+            records.position(offset + BATCH_HEADER_BYTES).limit(offset + BATCH_HEADER_BYTES + length);
+            crc.reset();
+            crc.update(records.duplicate());
+            if((int) crc.getValue() != checksum)
+                break;
+
+            while(records.hasRemaining()) {
+                byte type = records.get();
+                long session = records.getLong();
+                lastSession = Math.max(lastSession, session);
+                if(type == MOVE) {
+                    int house = records.get();
+                    int[] tail = tails.get(session);
+                    if(tail == null)
+                        continue;
+                    if(tail[0] + 1 == tail.length) {
+                        tail = Arrays.copyOf(tail, tail.length * 2);
+                        tails.put(session, tail);
+                    }
+                    tail[++tail[0]] = house;
+                } else if(type == SNAPSHOT) {
+                    int numHouses = records.get(records.position() + 1) & 0xFF;
+                    byte[] snapshot = new byte[GameEngine.snapshotBytes(numHouses)];
+                    records.get(snapshot);
+                    snapshots.put(session, snapshot);
+                    tails.put(session, new int[SNAPSHOT_INTERVAL + 1]); //tail[0] counts the moves
+                } else if(type == END) {
+                    snapshots.remove(session);
+                    tails.remove(session);
+                } else {
+                    throw new IOException("Unknown journal record " + type + " at batch " + position);
+                }
+            }
+            position += BATCH_HEADER_BYTES + length;
+        }
+
+        Map<Long, GameEngine> games = new LinkedHashMap<>();
+        for(Map.Entry<Long, byte[]> entry : snapshots.entrySet()) {
+            GameEngine engine = GameEngine.readSnapshot(ByteBuffer.wrap(entry.getValue()));
+            int[] tail = tails.get(entry.getKey());
+            for(int i = 1; i <= tail[0]; i++) {
+                engine.play(tail[i]);
+            }
+            games.put(entry.getKey(), engine);
+        }
+        return games;
+    }
+
+    /**
+     * Works out the size of the journal holding only a snapshot of each restored game
+     * @return - bytes the compacted journal would take
+     */
+    private long compactedSize() {
+        long size = HEADER_BYTES + BATCH_HEADER_BYTES + 9;
+        for(GameEngine engine : restored.values()) {
+            size += 9 + GameEngine.snapshotBytes(engine.getBoard().NUMHOUSES);
+        }
+        return size + (size / BATCH_BYTES + 1) * BATCH_HEADER_BYTES;
+    }
+
+    /**
+     * Rewrites the journal with only a snapshot of each restored game, then swaps it in for the
+     * old file. The new file is written and forced beside the journal before the swap, so a crash
+     * part way leaves the old journal as it was.
+     * @param file - journal file
+     */
+    private void compact(Path file) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        long size;
+        try(FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.allocate(HEADER_BYTES).putInt(0, MAGIC));
+            ByteBuffer batch = pending; //the committer hasn't started, so the pending batch is free
+            for(Map.Entry<Long, GameEngine> game : restored.entrySet()) {
+                GameEngine engine = game.getValue();
+                if(batch.remaining() < 9 + GameEngine.snapshotBytes(engine.getBoard().NUMHOUSES))
+                    writeBatch(out, batch);
+                batch.put(SNAPSHOT).putLong(game.getKey());
+                engine.writeSnapshot(batch);
+            }
+            //an end for the highest session keeps it, so new sessions aren't numbered onto ended ones
+            if(lastSession > 0 && !restored.containsKey(lastSession)) {
+                if(batch.remaining() < 9)
+                    writeBatch(out, batch);
+                batch.put(END).putLong(lastSession);
+            }
+            if(batch.position() > 0)
+                writeBatch(out, batch);
+            out.force(true);
+            size = out.size();
+        }
+        window = null;
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        position = size;
+    }
+
+    /**
+     * Frames a batch with its length and CRC32C and writes it to a compacted journal
+     */
+    private void writeBatch(FileChannel out, ByteBuffer batch) throws IOException {
+        batch.flip();
+        crc.reset();
+        crc.update(batch.duplicate());
+        writeFully(out, ByteBuffer.allocate(BATCH_HEADER_BYTES).putInt(0, batch.remaining()).putInt(4, (int) crc.getValue()));
+        writeFully(out, batch);
+        batch.clear();
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Retrieves the games that were live when the journal was last closed or the process died
+     * @return - games by session number, in no particular order
+     */
+    public Map<Long, GameEngine> getRestoredGames() {
+        return restored;
+    }
+
+    /**
+     * Retrieves the highest session number in the journal when it was opened, so new sessions
+     * can be numbered after every session it has recorded
+     * @return - session number, or 0 for a new journal
+     */
+    public long getLastSession() {
+        return lastSession;
+    }
+
+    /**
+     * Retrieves the file offset of the next batch
+     * @return - bytes of the journal in use
+     */
+    public long getSize() {
+        return position;
+    }
+
+    /**
+     * Commits the last batch, then stops the committer and closes the file, trimmed to the
+     * batches written
+     */
+    public void close() throws IOException {
+        synchronized(lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(window != null)
+            window.force();
+        //mapping grows the file a window at a time, trim it back to the batches written
+        window = null;
+        channel.truncate(position);
+        channel.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 4 || !args[0].equals("bench")) {
+            System.out.println("Usage: GameJournal bench file sessions movesPerSession...");
+            return;
+        }
+        Path file = Paths.get(args[1]);
+        int sessions = Integer.parseInt(args[2]);
+        System.out.printf("%10s %12s %10s %14s %12s %10s%n", "sessions", "moves", "MB", "append ns/move", "restore ms", "restored");
+        for(int i = 3; i < args.length; i++) {
+            bench(file, sessions, Integer.parseInt(args[i]));
+        }
+    }
+
+    /**
+     * Journals random games for many sessions, then times reopening the journal, which compacts
+     * it, and checks that every game comes back as it was
+     */
+    private static void bench(Path file, int sessions, int movesPerSession) throws Exception {
+        Files.deleteIfExists(file);
+        List<GameEngine> engines = new ArrayList<>();
+        int[] sinceSnapshot = new int[sessions];
+        SplittableRandom random = new SplittableRandom(sessions * 31L + movesPerSession);
+        long moves = 0;
+        long appendNanos;
+        long size;
+        try(GameJournal journal = new GameJournal(file, false)) {
+            for(int session = 0; session < sessions; session++) {
+                GameEngine engine = new GameEngine();
+                engines.add(engine);
+                journal.recordSnapshot(session, engine);
+            }
+            long start = System.nanoTime();
+            long ticket = 0;
+            //sessions take turns, as they would on a busy server
+            for(int round = 0; round < movesPerSession; round++) {
+                for(int session = 0; session < sessions; session++) {
+                    GameEngine engine = engines.get(session);
+                    if(engine.isGameOver()) {
+                        engine.reset();
+                        ticket = journal.recordSnapshot(session, engine);
+                        sinceSnapshot[session] = 0;
+                        continue;
+                    }
+                    int house = SelfPlay.randomHouse(engine.getBoard().getCore(), engine.isPlayOneTurn(), random);
+                    engine.play(house);
+                    ticket = journal.recordMove(session, house);
+                    moves++;
+                    if(++sinceSnapshot[session] == SNAPSHOT_INTERVAL) {
+                        ticket = journal.recordSnapshot(session, engine);
+                        sinceSnapshot[session] = 0;
+                    }
+                }
+            }
+            journal.awaitCommit(ticket);
+            appendNanos = System.nanoTime() - start;
+            size = journal.getSize();
+        }
+
+        long start = System.nanoTime();
+        Map<Long, GameEngine> games;
+        try(GameJournal journal = new GameJournal(file, false)) {
+            games = journal.getRestoredGames();
+        }
+        double restoreMillis = (System.nanoTime() - start) / 1e6;
+        for(int session = 0; session < sessions; session++) {
+            GameEngine live = engines.get(session);
+            GameEngine back = games.get((long) session);
+            if(back == null || back.isPlayOneTurn() != live.isPlayOneTurn()
+                    || !Arrays.equals(back.getBoard().getCore().pits, live.getBoard().getCore().pits))
+                throw new IllegalStateException("Session " + session + " was not restored as it was");
+        }
+        System.out.printf("%10d %12d %10.1f %14.1f %12.1f %10d%n", sessions, moves, size / 1e6,
+                (double) appendNanos / Math.max(1, moves), restoreMillis, games.size());
+    }
+}
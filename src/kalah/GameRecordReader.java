@@ -0,0 +1,209 @@
+package kalah;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams games back out of a file written by GameRecordWriter. Only the game being read is
+ * held in memory, and the block index lets the reader jump to any game without reading the
+ * games before its block.
+ * @author mpie374
+ */
+public class GameRecordReader implements Closeable {
+    private final FileChannel channel;
+    private final int numHouses;
+    private final int seedsPerHouse;
+    private final int blockSize;
+    private final int bitsPerMove;
+    private final long numGames;
+    private final long[] blockOffsets;
+    private final long indexOffset;
+    private DataInputStream in;
+    private long position; //byte offset of the next game
+    private long nextGame;
+    private int[] moves = new int[128];
+    private int numMoves;
+    private boolean quit;
+    private byte[] packed = new byte[64];
+
+    /**
+     * Opens a record file and reads its header and block index
+     * @param file - file written by GameRecordWriter
+     * @throws IOException if the file can't be read or is not a game record file
+     */
+    public GameRecordReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(GameRecordWriter.HEADER_BYTES);
+        channel.read(header, 0);
+        ByteBuffer footer = ByteBuffer.allocate(GameRecordWriter.FOOTER_BYTES);
+        channel.read(footer, channel.size() - GameRecordWriter.FOOTER_BYTES);
+        if(header.getInt(0) != GameRecordWriter.MAGIC || footer.getInt(20) != GameRecordWriter.MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not a complete game record file");
+        }
+        numHouses = header.getInt(4);
+        seedsPerHouse = header.getInt(8);
+        blockSize = header.getInt(12);
+        bitsPerMove = GameRecordWriter.bitsPerMove(numHouses);
+        numGames = footer.getLong(0);
+        int numBlocks = footer.getInt(8);
+        indexOffset = footer.getLong(12);
+        ByteBuffer index = ByteBuffer.allocate(numBlocks * 8);
+        channel.read(index, indexOffset);
+        blockOffsets = new long[numBlocks];
+        for(int i = 0; i < numBlocks; i++) {
+            blockOffsets[i] = index.getLong(i * 8);
+        }
+        seek(GameRecordWriter.HEADER_BYTES, 0);
+    }
+
+    /**
+     * Moves the reader so the next game read is the given one
+     * @param game - number of the game, from 0
+     * @throws IOException if the file can't be read
+     */
+    public void seekGame(long game) throws IOException {
+        if(game < 0 || game > numGames)
+            throw new IndexOutOfBoundsException("Game " + game + " of " + numGames);
+        if(game == numGames) {
+            seek(indexOffset, game);
+            return;
+        }
+        int block = (int) (game / blockSize);
+        seek(blockOffsets[block], (long) block * blockSize);
+        while(nextGame < game) {
+            next();
+        }
+    }
+
+    private void seek(long offset, long game) throws IOException {
+        position = offset;
+        nextGame = game;
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(offset)), 1 << 16));
+    }
+
+    /**
+     * Reads the next game
+     * @return - FALSE if there are no more games
+     * @throws IOException if the file can't be read
+     */
+    public boolean next() throws IOException {
+        if(nextGame == numGames)
+            return false;
+        long header = readVarint();
+        numMoves = (int) (header >>> 1);
+        quit = (header & 1) != 0;
+        int numBytes = (numMoves * bitsPerMove + 7) / 8;
+        if(numBytes > packed.length)
+            packed = new byte[Math.max(numBytes, packed.length * 2)];
+        if(numMoves > moves.length)
+            moves = new int[Math.max(numMoves, moves.length * 2)];
+        in.readFully(packed, 0, numBytes);
+        position += numBytes;
+        long bit = 0;
+        for(int i = 0; i < numMoves; i++) {
+            int value = 0;
+            for(int b = 0; b < bitsPerMove; b++, bit++) {
+                value |= ((packed[(int) (bit >>> 3)] >>> (bit & 7)) & 1) << b;
+            }
+            moves[i] = value + 1;
+        }
+        nextGame++;
+        return true;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if(b < 0)
+                throw new EOFException();
+            position++;
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Plays the current game's moves on a board through Board.sowSeeds
+     * @param board - board of the record's variant, reset before the moves are played
+     * @return - TRUE if Player 1 is to move after the last move
+     */
+    public boolean replay(Board board) {
+        board.reset();
+        boolean isPlayOneTurn = true;
+        for(int i = 0; i < numMoves; i++) {
+            isPlayOneTurn = board.sowSeeds(isPlayOneTurn, false, moves[i], null);
+        }
+        return isPlayOneTurn;
+    }
+
+    public int getNumMoves() {
+        return numMoves;
+    }
+
+    /**
+     * Retrieves a move of the current game
+     * @param i - move number, from 0
+     * @return - house number of the move
+     */
+    public int getMove(int i) {
+        return moves[i];
+    }
+
+    public boolean wasQuit() {
+        return quit;
+    }
+
+    public long getNumGames() {
+        return numGames;
+    }
+
+    public int getNumHouses() {
+        return numHouses;
+    }
+
+    public int getSeedsPerHouse() {
+        return seedsPerHouse;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Replays every game in a file and reports the replay throughput.
+     * Usage: java kalah.GameRecordReader file
+     */
+    public static void main(String[] args) throws IOException {
+        try(GameRecordReader reader = new GameRecordReader(Paths.get(args[0]))) {
+            Board board = new Board(reader.getNumHouses(), reader.getSeedsPerHouse());
+            long[] outcomes = new long[Game_Outcome.values().length];
+            long moves = 0;
+            long start = System.nanoTime();
+            while(reader.next()) {
+                boolean isPlayOneTurn = reader.replay(board);
+                outcomes[new GameEngine(board, isPlayOneTurn).getOutcome().ordinal()]++;
+                moves += reader.getNumMoves();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Replayed %d games (%d moves) in %.3f s, %.0f games/sec, %.1f bits/move%n",
+                    reader.getNumGames(), moves, seconds, reader.getNumGames() / seconds,
+                    8.0 * Paths.get(args[0]).toFile().length() / moves);
+            System.out.printf("P1 wins %d, P2 wins %d, ties %d%n", outcomes[Game_Outcome.WIN.ordinal()],
+                    outcomes[Game_Outcome.LOSS.ordinal()], outcomes[Game_Outcome.TIE.ordinal()]);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package kalah;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Streams games to the compact binary game record format.
+ * A file starts with a header giving the variant (Houses per Player and seeds per House) and
+ * the number of games per block. Each game is its number of moves as a varint, with the
+ * lowest bit set if the game was quit, followed by its house numbers packed at
+ * ceil(log2(numHouses)) bits each (3 bits for the standard game) and padded to a byte.
+ * The footer holds the byte offset of each block of games, so a reader can jump straight to
+ * any game, then the number of games, the number of blocks and where the index starts.
+ * @author mpie374
+ */
+public class GameRecordWriter implements Closeable {
+    static final int MAGIC = 0x4B475231; //"KGR1"
+    static final int HEADER_BYTES = 16;
+    static final int FOOTER_BYTES = 24;
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final DataOutputStream out;
+    private final int numHouses;
+    private final int bitsPerMove;
+    private final int blockSize;
+    private long bytesWritten;
+    private long numGames;
+    private long[] blockOffsets = new long[64];
+    private int numBlocks;
+    private int[] moves = new int[128]; //moves of the game in progress
+    private int numMoves;
+    private byte[] packed = new byte[64];
+
+    /**
+     * Creates a record file for one variant of the game
+     * @param file - file to write
+     * @param numHouses - number of Houses per Player
+     * @param seedsPerHouse - number of seeds each House starts with
+     * @param blockSize - number of games between index entries
+     * @throws IOException if the file can't be created
+     */
+    public GameRecordWriter(Path file, int numHouses, int seedsPerHouse, int blockSize) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile()), 1 << 16));
+        this.numHouses = numHouses;
+        this.bitsPerMove = bitsPerMove(numHouses);
+        this.blockSize = blockSize;
+        out.writeInt(MAGIC);
+        out.writeInt(numHouses);
+        out.writeInt(seedsPerHouse);
+        out.writeInt(blockSize);
+        bytesWritten = HEADER_BYTES;
+    }
+
+    /**
+     * Finds how many bits are needed to store a house number
+     * @param numHouses - number of Houses per Player
+     * @return - bits per move
+     */
+    static int bitsPerMove(int numHouses) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(numHouses - 1));
+    }
+
+    /**
+     * Adds a move to the game in progress
+     * @param selectedHouse - house number from 1 to numHouses
+     */
+    public void recordMove(int selectedHouse) {
+        if(numMoves == moves.length)
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        moves[numMoves++] = selectedHouse;
+    }
+
+    /**
+     * Writes the game in progress and starts a new one
+     * @param quit - TRUE if a player quit before the game was over
+     */
+    public void endGame(boolean quit) {
+        try {
+            if(numGames % blockSize == 0) {
+                if(numBlocks == blockOffsets.length)
+                    blockOffsets = Arrays.copyOf(blockOffsets, numBlocks * 2);
+                blockOffsets[numBlocks++] = bytesWritten;
+            }
+            writeVarint(((long) numMoves << 1) | (quit ? 1 : 0));
+            int numBytes = (numMoves * bitsPerMove + 7) / 8;
+            if(numBytes > packed.length)
+                packed = new byte[Math.max(numBytes, packed.length * 2)];
+            Arrays.fill(packed, 0, numBytes, (byte) 0);
+            long bit = 0;
+            for(int i = 0; i < numMoves; i++) {
+                int value = moves[i] - 1;
+                for(int b = 0; b < bitsPerMove; b++, bit++) {
+                    if((value & (1 << b)) != 0)
+                        packed[(int) (bit >>> 3)] |= (byte) (1 << (bit & 7));
+                }
+            }
+            out.write(packed, 0, numBytes);
+            bytesWritten += numBytes;
+            numGames++;
+            numMoves = 0;
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+            bytesWritten++;
+        }
+        out.writeByte((int) value);
+        bytesWritten++;
+    }
+
+    public long getNumGames() {
+        return numGames;
+    }
+
+    /**
+     * Writes the block index and footer and closes the file. A game in progress is discarded.
+     * @throws IOException if the file can't be written
+     */
+    public void close() throws IOException {
+        long indexOffset = bytesWritten;
+        for(int i = 0; i < numBlocks; i++) {
+            out.writeLong(blockOffsets[i]);
+        }
+        out.writeLong(numGames);
+        out.writeInt(numBlocks);
+        out.writeLong(indexOffset);
+        out.writeInt(MAGIC);
+        out.close();
+    }
+
+    /**
+     * Writes a file of seeded self-play games, P1 playing random moves against the
+     * 'best first move' rules, for trying out the format.
+     * Usage: java kalah.GameRecordWriter file games [seed]
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args[0]);
+        int numGames = Integer.parseInt(args[1]);
+        SplittableRandom random = new SplittableRandom(args.length > 2 ? Long.parseLong(args[2]) : 1);
+        GameEngine engine = new GameEngine();
+        BoardCore core = engine.getBoard().getCore();
+        BmfRobot bmf = new BmfRobot();
+        long start = System.nanoTime();
+        try(GameRecordWriter writer = new GameRecordWriter(file, core.NUMHOUSES, engine.getBoard().getSeedsPerHouse(), DEFAULT_BLOCK_SIZE)) {
+            engine.setRecorder(writer);
+            for(int game = 0; game < numGames; game++) {
+                engine.reset();
+                while(!engine.isGameOver()) {
+                    boolean isPlayOneTurn = engine.isPlayOneTurn();
+                    engine.play(isPlayOneTurn ? SelfPlay.randomHouse(core, true, random) : bmf.chooseHouse(core, false));
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Wrote %d games to %s (%d bytes) in %.3f s%n", numGames, file, file.toFile().length(), seconds);
+    }
+}
@@ -0,0 +1,311 @@
+package kalah;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Hosts many human versus robot games over TCP, one GameSession per connection, speaking the
+ * line protocol described in GameSession. Each connection is served by its own thread, which
+ * spends most of its time blocked reading the next line. Virtual threads are used when the JVM
+ * has them so a blocked read doesn't hold a platform thread, otherwise a cached pool of small
+ * stack platform threads. Robot moves run on a fixed size pool with a bounded queue, so busy
+ * robots can't take every CPU from the sessions' IO; once the queue is full a session computes
+ * its robot's move itself, which slows that client down rather than queueing without limit.
+ * With a GameJournal the games that were live when the server last stopped are restored at
+ * startup, and a client continues one with resume N. A client that disconnects without quitting
+ * can resume its session the same way. A session nobody resumes within the detached timeout
+ * is ended in the journal, so abandoned games don't pile up across restarts.
+ * Usage: java kalah.GameServer [port] [robotThreads] [journalFile|-] [strategy] [detachedTimeoutSeconds]
+ * where the strategy names the robot as for Tournament, bmf by default.
+ * @author mpie374
+ */
+public class GameServer implements Closeable {
+    public static final int DEFAULT_PORT = 7010;
+    public static final long DEFAULT_DETACHED_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+    private static final long MAX_SWEEP_MILLIS = 60 * 1000L;
+    private static final int ROBOT_QUEUE_SIZE = 4096;
+    private static final int BACKLOG = 4096;
+    private static final int PLATFORM_STACK_BYTES = 256 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessionThreads;
+    private final ThreadPoolExecutor robotPool;
+    private final ThreadLocal<Robot> robots;
+    private final ConcurrentHashMap<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, GameSession> detached = new ConcurrentHashMap<>(); //waiting to be resumed
+    private final GameJournal journal;
+    private final long detachedTimeoutNanos;
+    private final ScheduledExecutorService sweeper;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Thread acceptor;
+
+    /**
+     * Starts a server on localhost
+     * @param port - port to listen on, or 0 for any free port
+     * @param robotThreads - size of the robot pool
+     * @param robotFactory - creates the robot used by each thread of the robot pool
+     * @throws IOException if the port can't be opened
+     */
+    public GameServer(int port, int robotThreads, Supplier<Robot> robotFactory) throws IOException {
+        this(port, robotThreads, robotFactory, null);
+    }
+
+    /**
+     * Starts a server on localhost that journals its games, restoring the games left in the
+     * journal as sessions waiting to be resumed
+     * @param port - port to listen on, or 0 for any free port
+     * @param robotThreads - size of the robot pool
+     * @param robotFactory - creates the robot used by each thread of the robot pool
+     * @param journal - journal to restore from and record to, or null for none
+     * @throws IOException if the port can't be opened
+     */
+    public GameServer(int port, int robotThreads, Supplier<Robot> robotFactory, GameJournal journal) throws IOException {
+        this(port, robotThreads, robotFactory, journal, DEFAULT_DETACHED_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Starts a server on localhost that journals its games and ends the sessions waiting to be
+     * resumed once they have waited longer than a timeout
+     * @param port - port to listen on, or 0 for any free port
+     * @param robotThreads - size of the robot pool
+     * @param robotFactory - creates the robot used by each thread of the robot pool
+     * @param journal - journal to restore from and record to, or null for none
+     * @param detachedTimeoutMillis - how long a session may wait to be resumed, in milliseconds
+     * @throws IOException if the port can't be opened
+     */
+    public GameServer(int port, int robotThreads, Supplier<Robot> robotFactory, GameJournal journal,
+            long detachedTimeoutMillis) throws IOException {
+        this.journal = journal;
+        this.detachedTimeoutNanos = detachedTimeoutMillis * 1000000L;
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.sessionThreads = newSessionExecutor();
+        this.robotPool = new ThreadPoolExecutor(robotThreads, robotThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ROBOT_QUEUE_SIZE), GameServer::runOrReject);
+        this.robots = ThreadLocal.withInitial(robotFactory);
+        if(journal != null) {
+            for(Map.Entry<Long, GameEngine> game : journal.getRestoredGames().entrySet()) {
+                long id = game.getKey();
+                GameSession session = new GameSession(id, game.getValue(), robotPool, robots, journal);
+                session.markDetached();
+                detached.put(id, session);
+            }
+            nextId.set(journal.getLastSession() + 1);
+        }
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "kalah-detached-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepMillis = Math.max(1, Math.min(detachedTimeoutMillis / 2, MAX_SWEEP_MILLIS));
+        sweeper.scheduleWithFixedDelay(this::expireDetached, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+        this.acceptor = new Thread(this::acceptConnections, "kalah-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread per session if the JVM supports
+     * them (Java 21 and later), otherwise a new platform thread with a small stack
+     */
+    static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            AtomicLong threadCount = new AtomicLong();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "kalah-session-" + threadCount.incrementAndGet(), PLATFORM_STACK_BYTES);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void acceptConnections() {
+        while(!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sessionThreads.execute(() -> serve(socket));
+            } catch(SocketException e) {
+                //the server socket was closed
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Runs one connection's session until the client quits or disconnects
+     */
+    private void serve(Socket socket) {
+        GameSession session = null;
+        try(Socket client = socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.US_ASCII))) {
+            try {
+                session = new GameSession(nextId.getAndIncrement(), new GameEngine(), robotPool, robots, journal);
+                sessions.put(session.getId(), session);
+                client.setTcpNoDelay(true);
+                out.write(session.greeting());
+                out.newLine();
+                out.flush();
+                String line;
+                while(!session.isClosed() && (line = in.readLine()) != null) {
+                    if(line.startsWith("resume")) {
+                        GameSession resumed = resume(line);
+                        if(resumed == null) {
+                            out.write("ERROR no session to resume");
+                        } else {
+                            session.abandon();
+                            sessions.remove(session.getId());
+                            session = resumed;
+                            sessions.put(session.getId(), session);
+                            out.write(session.resume());
+                        }
+                    } else {
+                        out.write(session.handle(line));
+                    }
+                    out.newLine();
+                    out.flush();
+                }
+            } catch(IllegalStateException e) {
+                //the robot failed, or the journal was closed while the session was live. The
+                //client still gets an answer before the connection closes.
+                if(e.getCause() != null)
+                    e.printStackTrace();
+                out.write("ERROR " + e.getMessage());
+                out.newLine();
+                out.flush();
+            }
+        } catch(IOException | InterruptedException e) {
+            //the client disconnected or the server is closing
+        } finally {
+            if(session != null) {
+                sessions.remove(session.getId());
+                if(journal != null && !session.isClosed()) {
+                    session.markDetached();
+                    detached.put(session.getId(), session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the session a resume request names from those waiting to be resumed
+     * @return - the session, or null if there is no such session
+     */
+    private GameSession resume(String line) {
+        String[] words = line.trim().split(" +");
+        if(words.length != 2)
+            return null;
+        try {
+            return detached.remove(Long.parseLong(words[1]));
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Retrieves a connected session
+     * @param id - session number
+     * @return - the session, or null if it has ended
+     */
+    public GameSession getSession(long id) {
+        return sessions.get(id);
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Runs a robot turn on the session's own thread when the robot pool's queue is full. Once the
+     * pool is shut down the turn is refused instead, where CallerRunsPolicy would silently drop
+     * it and leave the session waiting for it forever.
+     */
+    private static void runOrReject(Runnable task, ThreadPoolExecutor pool) {
+        if(pool.isShutdown())
+            throw new RejectedExecutionException("Robot pool is shut down");
+        task.run();
+    }
+
+    /**
+     * Ends the sessions that have waited longer than the detached timeout to be resumed. A
+     * session is only ended if it is still waiting, so a resume at the same moment wins or
+     * loses cleanly.
+     */
+    private void expireDetached() {
+        long now = System.nanoTime();
+        for(GameSession session : detached.values()) {
+            if(now - session.getDetachedAt() > detachedTimeoutNanos && detached.remove(session.getId(), session))
+                session.abandon();
+        }
+    }
+
+    /**
+     * Counts the sessions restored from the journal or left by a disconnected client that
+     * haven't been resumed
+     * @return - number of sessions waiting to be resumed
+     */
+    public int getDetachedSessionCount() {
+        return detached.size();
+    }
+
+    /**
+     * Stops accepting connections and stops the robot pool. Sessions end as their clients
+     * disconnect. The journal is left open for its owner to close.
+     */
+    public void close() throws IOException {
+        serverSocket.close();
+        sweeper.shutdown();
+        sessionThreads.shutdown();
+        robotPool.shutdown();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int robotThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        GameJournal journal = args.length > 2 && !args[2].equals("-") ? new GameJournal(Paths.get(args[2]), false) : null;
+        LongFunction<Robot> strategy = Tournament.strategy(args.length > 3 ? args[3] : "bmf");
+        long detachedTimeoutMillis = args.length > 4 ? Long.parseLong(args[4]) * 1000L : DEFAULT_DETACHED_TIMEOUT_MILLIS;
+        AtomicLong robotSeeds = new AtomicLong();
+        GameServer server = new GameServer(port, robotThreads, () -> strategy.apply(robotSeeds.incrementAndGet()), journal,
+                detachedTimeoutMillis);
+        System.out.println("Kalah server listening on port " + server.getPort());
+        if(journal != null) {
+            System.out.println("Restored " + server.getDetachedSessionCount() + " games from " + args[2]);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                    journal.close();
+                } catch(IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+    }
+}
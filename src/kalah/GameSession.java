@@ -0,0 +1,263 @@
+package kalah;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * One human versus robot game hosted by the GameServer. The human is Player 1 and the robot
+ * is Player 2. Each request line is answered with exactly one response line, so the session
+ * doesn't depend on how lines reach it. Robot moves are computed on the server's shared robot
+ * pool rather than on the session's own thread. With a GameJournal every move is journaled and
+ * each response waits for its records to be committed, so an answered move survives a restart.
+ * Requests:  move N | board | new | quit | resume N
+ * Responses: STATUS ROBOT moves BOARD pits TURN P1|P2, where STATUS is OK, EMPTY or OVER with
+ * the outcome for Player 1, moves are the robot's houses separated by commas or - for none,
+ * and pits are P1's Houses, P1's Store, P2's Houses then P2's Store; BYE after quit, or
+ * ERROR with a message for a bad request, or one that ends the session when the server is
+ * shutting down. resume N is handled by the GameServer, which swaps in session N, answers with
+ * its state and plays the robot's turn if it was cut short.
+ * @author mpie374
+ */
+public class GameSession {
+    private final long id;
+    private final GameEngine engine;
+    private final ExecutorService robotPool;
+    private final ThreadLocal<Robot> robots;
+    private final GameJournal journal;
+    private final StringBuilder response = new StringBuilder(128);
+    private int movesSinceSnapshot;
+    private long ticket; //journal ticket of the latest record
+    private boolean closed;
+    private volatile long detachedAt; //System.nanoTime when the session last lost its client
+
+    /**
+     * Creates a session with a new game
+     * @param id - session number given by the server
+     * @param robotPool - pool robot moves are computed on
+     * @param robots - robot for each thread of the pool
+     */
+    public GameSession(long id, ExecutorService robotPool, ThreadLocal<Robot> robots) {
+        this(id, new GameEngine(), robotPool, robots, null);
+    }
+
+    /**
+     * Creates a session continuing a game, journaling it from a snapshot of where it is now
+     * @param id - session number given by the server
+     * @param engine - the game
+     * @param robotPool - pool robot moves are computed on
+     * @param robots - robot for each thread of the pool
+     * @param journal - journal to record the game in, or null for none
+     */
+    public GameSession(long id, GameEngine engine, ExecutorService robotPool, ThreadLocal<Robot> robots, GameJournal journal) {
+        this.id = id;
+        this.engine = engine;
+        this.robotPool = robotPool;
+        this.robots = robots;
+        this.journal = journal;
+        if(journal != null)
+            snapshot();
+    }
+
+    /**
+     * Describes the session to a client that has just connected
+     * @return - greeting line
+     */
+    public String greeting() {
+        response.setLength(0);
+        response.append("SESSION ").append(id).append(' ');
+        appendBoard();
+        return response.toString();
+    }
+
+    /**
+     * Carries out one request, waiting for anything it journaled to be committed
+     * @param line - request line from the client
+     * @return - response line
+     * @throws InterruptedException if interrupted while waiting for the robot or the journal
+     */
+    public String handle(String line) throws InterruptedException {
+        String answer = respond(line);
+        if(journal != null)
+            journal.awaitCommit(ticket);
+        return answer;
+    }
+
+    private String respond(String line) throws InterruptedException {
+        String[] words = line.trim().split(" +");
+        switch(words[0]) {
+            case "move":
+                if(words.length != 2)
+                    return "ERROR usage: move N";
+                int house;
+                try {
+                    house = Integer.parseInt(words[1]);
+                } catch(NumberFormatException e) {
+                    return "ERROR usage: move N";
+                }
+                return move(house);
+            case "board":
+                return state("OK", null);
+            case "new":
+                engine.reset();
+                if(journal != null)
+                    snapshot();
+                return state("OK", null);
+            case "quit":
+                closed = true;
+                if(journal != null)
+                    ticket = journal.recordEnd(id);
+                return "BYE";
+            default:
+                return "ERROR unknown command " + words[0];
+        }
+    }
+
+    /**
+     * Plays the human's move, then the robot's moves until it is the human's turn again
+     */
+    private String move(int house) throws InterruptedException {
+        if(engine.isGameOver())
+            return "ERROR game over";
+        if(house < 1 || house > engine.getBoard().NUMHOUSES)
+            return "ERROR house must be 1 to " + engine.getBoard().NUMHOUSES;
+        if((play(house) & GameEngine.EMPTY_HOUSE) != 0)
+            return state("EMPTY", null);
+        return robotTurn();
+    }
+
+    /**
+     * Plays the robot's moves if it is the robot's turn, on the robot pool
+     */
+    private String robotTurn() throws InterruptedException {
+        if(engine.isGameOver() || engine.isPlayOneTurn())
+            return state(engine.isGameOver() ? "OVER" : "OK", null);
+
+        Future<String> robotMoves;
+        try {
+            robotMoves = robotPool.submit(this::playRobot);
+        } catch(RejectedExecutionException e) {
+            //the server is closing. A journaled game is restored with the robot to move.
+            closed = true;
+            return "ERROR server is shutting down";
+        }
+        try {
+            String moves = robotMoves.get();
+            return state(engine.isGameOver() ? "OVER" : "OK", moves);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("Robot failed", e.getCause());
+        }
+    }
+
+    /**
+     * Runs on the robot pool while the session's thread waits for it
+     * @return - robot's houses separated by commas
+     */
+    private String playRobot() {
+        Robot robot = robots.get();
+        StringBuilder moves = new StringBuilder();
+        while(!engine.isGameOver() && !engine.isPlayOneTurn()) {
+            long started = Metrics.start();
+            int house = robot.chooseHouse(engine.getBoard(), false);
+            Metrics.recordRobotDecision(started, house, robot.getReason());
+            play(house);
+            if(moves.length() > 0)
+                moves.append(',');
+            moves.append(house);
+        }
+        return moves.toString();
+    }
+
+    /**
+     * Plays a move, journaling it and a fresh snapshot every SNAPSHOT_INTERVAL moves
+     * @return - the engine's event flags
+     */
+    private int play(int house) {
+        int events = engine.play(house);
+        if(journal != null && (events & GameEngine.EMPTY_HOUSE) == 0) {
+            ticket = journal.recordMove(id, house);
+            if(++movesSinceSnapshot == GameJournal.SNAPSHOT_INTERVAL)
+                snapshot();
+        }
+        return events;
+    }
+
+    private void snapshot() {
+        ticket = journal.recordSnapshot(id, engine);
+        movesSinceSnapshot = 0;
+    }
+
+    /**
+     * Continues the session on a new connection, finishing the robot's turn if the server
+     * stopped part way through it
+     * @return - response line
+     * @throws InterruptedException if interrupted while waiting for the robot or the journal
+     */
+    public String resume() throws InterruptedException {
+        String answer = robotTurn();
+        if(journal != null)
+            journal.awaitCommit(ticket);
+        return answer;
+    }
+
+    /**
+     * Ends the session without a quit from its client, used when the connection resumes
+     * another session instead, so this one isn't restored after a restart
+     */
+    public void abandon() {
+        closed = true;
+        if(journal != null)
+            ticket = journal.recordEnd(id);
+    }
+
+    private String state(String status, String robotMoves) {
+        response.setLength(0);
+        response.append(status);
+        if(status.equals("OVER"))
+            response.append(' ').append(engine.getOutcome());
+        response.append(" ROBOT ").append(robotMoves == null ? "-" : robotMoves).append(' ');
+        appendBoard();
+        return response.toString();
+    }
+
+    private void appendBoard() {
+        BoardCore core = engine.getBoard().getCore();
+        response.append("BOARD");
+        for(int i = 0; i < core.BOARDSIZE; i++) {
+            response.append(' ').append(core.getSeeds(i));
+        }
+        response.append(" TURN ").append(engine.isPlayOneTurn() ? "P1" : "P2");
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Notes that the session has no client and is waiting to be resumed, from now
+     */
+    public void markDetached() {
+        detachedAt = System.nanoTime();
+    }
+
+    /**
+     * Retrieves when the session was last left waiting to be resumed
+     * @return - System.nanoTime when it was detached
+     */
+    public long getDetachedAt() {
+        return detachedAt;
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Checks whether the client has quit
+     * @return - TRUE once quit has been handled
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -6,9 +6,13 @@ package kalah;
  */
 public class House extends Pit {
     /**
-     * Default constructor - sets number of seeds to 4
+     * Default constructor - sets the starting number of seeds
+     * @param core - the board core holding the seeds
+     * @param index - index of this House in the core
+     * @param seeds - number of seeds the House starts with
      */
-    House() {
-        this.numSeeds = 4;
+    House(BoardCore core, int index, int seeds) {
+        super(core, index);
+        clonePit(seeds);
     }
 }
@@ -2,6 +2,7 @@ package kalah;
 
 import com.qualitascorpus.testsupport.IO;
 import com.qualitascorpus.testsupport.MockIO;
+import java.util.Arrays;
 
 /**
  * This class is the starting point for a Kalah implementation using
@@ -10,8 +11,57 @@ import com.qualitascorpus.testsupport.MockIO;
  * @author mpie374
  */
 public class Kalah {
-	public static void main(String[] args) {
-		new Kalah().play(new MockIO(), false, true);
+	private static final ThreadLocal<BmfRobot> BMF_ROBOT = ThreadLocal.withInitial(BmfRobot::new);
+
+	private Robot robot;
+	private int frameInterval = 1;
+	private GameRecordWriter recorder;
+
+	/**
+	 * Plays a game, against the robot of the strategy named by the first argument if there is
+	 * one, as for Tournament (for example ponder:14:2000 to think during the human's turn, or
+	 * book:book.bin:search:10). With the arguments analyze input output [strategy] [threads]
+	 * [cacheSize] a file of positions is annotated with PositionAnalyzer instead.
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length > 0 && args[0].equals("analyze")) {
+			PositionAnalyzer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		Robot robot = args.length > 0 ? Tournament.strategy(args[0]).apply(System.nanoTime()) : null;
+		new Kalah(robot).play(new MockIO(), false, true);
+	}
+
+	/**
+	 * Default constructor, Player 2 is played by the 'best first move' robot when enabled
+	 */
+	public Kalah() {
+		this(null);
+	}
+
+	/**
+	 * Creates a game where Player 2 is played by the given robot when enabled
+	 * @param robot - robot to play Player 2, or null for the 'best first move' robot
+	 */
+	public Kalah(Robot robot) {
+		this.robot = robot;
+	}
+
+	/**
+	 * Sets how often the board is displayed during the game. The final board at game over
+	 * is always displayed.
+	 * @param frameInterval - display every frameInterval'th board, 1 for all, 0 for quiet
+	 */
+	public void setFrameInterval(int frameInterval) {
+		this.frameInterval = frameInterval;
+	}
+
+	/**
+	 * Sets the writer the moves of each game are recorded to
+	 * @param recorder - game record writer, or null for none
+	 */
+	public void setRecorder(GameRecordWriter recorder) {
+		this.recorder = recorder;
 	}
 
 	/**
@@ -19,50 +69,68 @@ public class Kalah {
 	 * @param io - handles the standard input and output
 	 */
 	public void play(IO io, boolean vertical, boolean bmf) {
-		boolean playing = true;
-		boolean isPlayOneTurn = true;
-		boolean isBoardEmpty = false;
-
 		Board playingBoard = new Board();
-		playingBoard.displayBoard(io, vertical);
-		playingBoard = playTurn(playingBoard, io, isPlayOneTurn, playing, isBoardEmpty, vertical, bmf);
+		playingBoard.getRenderer().setFrameInterval(frameInterval);
+		playingBoard.displayFrame(io, vertical);
+		GameEngine engine = new GameEngine(playingBoard, true);
+		engine.setRecorder(recorder);
+		playTurn(engine, io, vertical, bmf, robot);
 	}
 
 	/**
 	 * This method handles the player and robot turn by determining whose turn it is (player or robot),
-	 * then retrieving what house that player will choose, before calling the method to sow the seeds.
-	 * @param playingBoard - the current state of the board
+	 * then retrieving what house that player will choose, before passing the move to the game engine.
+	 * The events the engine reports are then rendered to the players.
+	 * @param engine - the game being played
 	 * @param io - handles the input and output
-	 * @param isPlayOneTurn - whose turn it is
-	 * @param playing - TRUE whilst the game is still active
-	 * @param isBoardEmpty - FALSE until at least one side of the board is empty, indicating game over
 	 * @param vertical - TRUE if the board is to be displayed vertically
-	 * @param bmf - TRUE if PLayer 2 is the bmf robot
-	 * @return - the new state of the playing board
+	 * @param bmf - TRUE if PLayer 2 is a robot
+	 * @param robot - the robot playing Player 2, or null for the bmf robot
+	 * @return - the final state of the playing board
 	 */
-	public static Board playTurn(Board playingBoard, IO io, boolean isPlayOneTurn, boolean playing, boolean isBoardEmpty, boolean vertical, boolean bmf) {
-		int selectedHouse = -1;
+	public static Board playTurn(GameEngine engine, IO io, boolean vertical, boolean bmf, Robot robot) {
+		Board playingBoard = engine.getBoard();
+		Robot playerTwo = robot != null ? robot : new BmfRobot();
+		boolean playing = true;
+		int selectedHouse;
 		while(playing) {
+			boolean isPlayOneTurn = engine.isPlayOneTurn();
 			//Either no robot player or it is PlayerOne's turn
-			if(!bmf || (bmf && isPlayOneTurn)) {
-				selectedHouse = io.readInteger("Player P" + (isPlayOneTurn ? "1" : "2") + "'s turn - Specify house number or 'q' to quit: ", 1, 6, -1, "q");
-				if(!(selectedHouse == -1)) { //valid house input (1-6)
-					isPlayOneTurn = playingBoard.sowSeeds(isPlayOneTurn, isBoardEmpty, selectedHouse, io);
-				} else { //user entered 'q' to end game
-					io.println("Game over");
-					playing = false;
+			if(!bmf || isPlayOneTurn) {
+				//the robot may think about its reply while the human chooses
+				if(bmf)
+					playerTwo.startPondering(playingBoard, isPlayOneTurn);
+				try {
+					selectedHouse = io.readInteger("Player P" + (isPlayOneTurn ? "1" : "2") + "'s turn - Specify house number or 'q' to quit: ", 1, playingBoard.NUMHOUSES, -1, "q");
+				} finally {
+					//stops the robot thinking whether the human moved or quit
+					if(bmf)
+						playerTwo.stopPondering();
 				}
-			}else { //Robot turn
-				selectedHouse = robotTurn(playingBoard, io);
-				isPlayOneTurn = playingBoard.sowSeeds(isPlayOneTurn, isBoardEmpty, selectedHouse, io);
+			} else { //Robot turn
+				long started = Metrics.start();
+				selectedHouse = playerTwo.chooseHouse(playingBoard, isPlayOneTurn);
+				Metrics.recordRobotDecision(started, selectedHouse, playerTwo.getReason());
+				io.println("Player P2 (Robot) chooses house #" + selectedHouse + " because " + playerTwo.getReason());
+			}
+
+			if(selectedHouse == -1) { //user entered 'q' to end game
+				io.println("Game over");
+				engine.quit();
+				playing = false;
+			} else if((engine.play(selectedHouse) & GameEngine.EMPTY_HOUSE) != 0) {
+				io.println("House is empty. Move again.");
 			}
-			playingBoard.displayBoard(io, vertical);
+			if(playing)
+				playingBoard.displayFrame(io, vertical);
+			else
+				playingBoard.displayBoard(io, vertical);
 
-			//check if a Player's playing board is empty
-			isBoardEmpty = playingBoard.isBoardEmpty(isPlayOneTurn);
-			if(isBoardEmpty) { //game over
-				playingBoard.sowSeeds(isPlayOneTurn, isBoardEmpty, selectedHouse, io);
+			//check if the next Player's side of the board is empty
+			if(engine.isGameOver()) { //game over
+				long started = Metrics.start();
 				gameOver(io, playingBoard, vertical);
+				Metrics.recordGameOver(started);
 				playing = false;
 			}
 		}
@@ -70,62 +138,21 @@ public class Kalah {
 	}
 
 	/**
-	 * Searches for the first valid 'best first move' that the robot player can make
-	 * by iterating through each house in order of prioritised rules as follows:
+	 * Searches for the first valid 'best first move' that the robot player can make, using
+	 * BmfRobot, by iterating through each house in order of prioritised rules as follows:
 	 * Priority 1: Robot searches for lowest house number that leads to an additional turn (ends in store)
 	 * Priority 2: Robot searches for lowest house number that leads to a capture of opposition seeds
 	 * Priority 3: Robot does first legal move, if there is one
+	 * Each thread reuses one robot, and choosing the house allocates nothing. Only the message
+	 * announcing the move is built on every call.
 	 * @param playingBoard, the current state of the playing board
 	 * @param io
 	 * @return the selectedHouse number of robot's move
 	 */
 	public static int robotTurn(Board playingBoard, IO io) {
-
-		int currentHouseIndex;
-		int numSeedsToSow;
-		int selectedHouse = -1;
-		boolean searchingForBMF = true;
-		String reasonForMove = "";
-
-		//Check 1. Lowest #ed house that leads to an additional move
-		for(int i = 1; i <= playingBoard.NUMHOUSES; i++) {
-			currentHouseIndex = playingBoard.NUMHOUSES + i;
-			if(playingBoard.canRobotEndStore(currentHouseIndex)) {
-				selectedHouse = currentHouseIndex - playingBoard.NUMHOUSES;
-				reasonForMove = "it leads to an extra move";
-				searchingForBMF = false;
-				break;
-			}
-		}
-
-		//Check 2. Lowest #ed house that leads to a capture
-		if(searchingForBMF) {
-			for(int i = 1; i <= playingBoard.NUMHOUSES; i++) {
-				currentHouseIndex = playingBoard.NUMHOUSES + i;
-				numSeedsToSow = playingBoard.getPit(currentHouseIndex).getNumSeeds();
-				if(playingBoard.canRobotCapture(currentHouseIndex, numSeedsToSow, playingBoard)) {
-					selectedHouse = currentHouseIndex - playingBoard.NUMHOUSES;
-					reasonForMove = "it leads to a capture";
-					searchingForBMF = false;
-					break;
-				}
-			}
-		}
-
-		//Check 3. Lowest #ed house that has a legal move
-		if(searchingForBMF) {
-			for(int i = 1; i <= playingBoard.NUMHOUSES; i++) {
-				currentHouseIndex = playingBoard.NUMHOUSES + i;
-				if(playingBoard.doesRobotHaveLegalMove(currentHouseIndex)) {
-					selectedHouse = currentHouseIndex - playingBoard.NUMHOUSES;
-					reasonForMove = "it is the first legal move";
-					searchingForBMF = false;
-					break;
-				}
-			}
-		}
-
-		io.println("Player P2 (Robot) chooses house #" + selectedHouse + " because " + reasonForMove);
+		BmfRobot bmf = BMF_ROBOT.get();
+		int selectedHouse = bmf.chooseHouse(playingBoard, false);
+		io.println("Player P2 (Robot) chooses house #" + selectedHouse + " because " + bmf.getReason());
 		return selectedHouse;
 	}
 
@@ -0,0 +1,93 @@
+package kalah;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with one bucket per power of two nanoseconds. Each bucket is a LongAdder,
+ * so threads recording at the same time update separate cells instead of fighting over one
+ * counter. Percentiles are reported as the upper bound of the bucket they fall in, so they are
+ * accurate to within a factor of two.
+ * @author mpie374
+ */
+public class LatencyHistogram {
+    private static final int NUM_BUCKETS = 64;
+
+    private final String name;
+    private final LongAdder[] buckets = new LongAdder[NUM_BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds one timing
+     * @param nanos - time taken in nanoseconds
+     */
+    public void record(long nanos) {
+        //bucket b holds times from 2^b up to 2^(b+1) - 1, with 0 in bucket 0
+        buckets[63 - Long.numberOfLeadingZeros(nanos | 1)].increment();
+        totalNanos.add(nanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Counts the timings in each bucket
+     * @return - a copy of the bucket counts
+     */
+    public long[] getCounts() {
+        long[] counts = new long[NUM_BUCKETS];
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for(LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Finds the bucket a percentile falls in
+     * @param counts - bucket counts from getCounts
+     * @param percentile - from 0 to 100
+     * @return - upper bound of the bucket in nanoseconds, or 0 if nothing has been recorded
+     */
+    public static long percentile(long[] counts, double percentile) {
+        long count = 0;
+        for(long bucketCount : counts) {
+            count += bucketCount;
+        }
+        if(count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen >= rank)
+                return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public void reset() {
+        for(LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        totalNanos.reset();
+    }
+}
@@ -0,0 +1,129 @@
+package kalah;
+
+import java.util.Arrays;
+
+/**
+ * The original rules of Board.sowSeeds, kept as a reference for checking faster engines.
+ * Seeds are sown one at a time with the same index arithmetic the first version of Board used
+ * over its ArrayList of Pits: the opponent's Store is skipped by stepping past it, the end of the
+ * board wraps back to Player 1's first House, and captures use the house opposite the last seed.
+ * The pits are held in a plain int[] so none of the code being checked is shared.
+ * @author mpie374
+ */
+class LegacyBoard {
+    final int NUMHOUSES;
+    final int BOARDSIZE;
+    private final int P1STOREINDEX;
+    private final int P2STOREINDEX;
+    private final int[] pits;
+
+    /**
+     * Creates a board at the start of a game
+     * @param numHouses - number of Houses belonging to each Player
+     * @param seedsPerHouse - number of seeds each House starts with
+     */
+    LegacyBoard(int numHouses, int seedsPerHouse) {
+        NUMHOUSES = numHouses;
+        BOARDSIZE = (NUMHOUSES * 2) + 2;
+        P1STOREINDEX = NUMHOUSES;
+        P2STOREINDEX = BOARDSIZE - 1;
+        pits = new int[BOARDSIZE];
+        for(int i = 0; i < BOARDSIZE; i++) {
+            pits[i] = (i == P1STOREINDEX || i == P2STOREINDEX) ? 0 : seedsPerHouse;
+        }
+    }
+
+    /**
+     * Sows the seeds from the selected House exactly as the original Board.sowSeeds did
+     * @param isPlayOneTurn - TRUE if Player 1's turn
+     * @param selectedHouse - House the player has chosen to move from
+     * @return - GameEngine event flags: EMPTY_HOUSE if the House was empty and the same player
+     * must choose again, otherwise EXTRA_TURN or CAPTURE if either happened
+     */
+    int sowSeeds(boolean isPlayOneTurn, int selectedHouse) {
+        int startHouseIndex = isPlayOneTurn? (selectedHouse - 1) : (selectedHouse + NUMHOUSES);
+        int numSeedsToSow = pits[startHouseIndex];
+        if(numSeedsToSow == 0)
+            return GameEngine.EMPTY_HOUSE;
+
+        int moves = 1; //moves made this turn
+        pits[startHouseIndex] = 0;
+        while(moves <= numSeedsToSow) {
+            //skip p1 store when p2 turn
+            if(startHouseIndex + moves == P1STOREINDEX && !isPlayOneTurn) {
+                moves++;
+                numSeedsToSow++; //to account for jumping a move
+            } else if (startHouseIndex + moves == P2STOREINDEX && isPlayOneTurn) { //skip p2 store when p1 turn
+                moves++;
+                numSeedsToSow++; //to account for jumping a move
+            }
+            //check if end of playingBoard has been reached, then restart at index 0 (p1 House 1)
+            if(startHouseIndex + moves == BOARDSIZE) {
+                startHouseIndex -= (startHouseIndex + moves);
+            }
+            pits[startHouseIndex + moves]++;
+            moves++;
+        }
+
+        int currentPos = startHouseIndex + moves - 1;
+        int opposingIndex = -currentPos + (NUMHOUSES * 2);
+        if(isPlayOneTurn && currentPos == P1STOREINDEX) {
+            return GameEngine.EXTRA_TURN;
+        } else if(!isPlayOneTurn && currentPos == P2STOREINDEX) {
+            return GameEngine.EXTRA_TURN;
+        } else if(isPlayOneTurn && currentPos < P1STOREINDEX && pits[currentPos] == 1 && pits[opposingIndex] != 0) {
+            pits[P1STOREINDEX] += pits[currentPos] + pits[opposingIndex];
+            pits[currentPos] = 0;
+            pits[opposingIndex] = 0;
+            return GameEngine.CAPTURE;
+        } else if(!isPlayOneTurn && currentPos > P1STOREINDEX && pits[currentPos] == 1 && pits[opposingIndex] != 0) {
+            pits[P2STOREINDEX] += pits[currentPos] + pits[opposingIndex];
+            pits[currentPos] = 0;
+            pits[opposingIndex] = 0;
+            return GameEngine.CAPTURE;
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether the Houses of the player to move are empty, by counting every House
+     * @param isPlayOneTurn - TRUE if Player 1 is to move
+     * @return - TRUE if the game is over
+     */
+    boolean isBoardEmpty(boolean isPlayOneTurn) {
+        int p1SeedsRemaining = 0;
+        int p2SeedsRemaining = 0;
+        for(int i = 0; i < NUMHOUSES; i++) {
+            p1SeedsRemaining += pits[i];
+            p2SeedsRemaining += pits[P1STOREINDEX + 1 + i];
+        }
+        return ((p1SeedsRemaining == 0 && isPlayOneTurn) || (p2SeedsRemaining == 0 && !isPlayOneTurn));
+    }
+
+    /**
+     * Finds the result of the game, where each Player's score is every seed on their side
+     * @return - the Game_Outcome for Player 1
+     */
+    Game_Outcome getWinner() {
+        int p1Score = 0;
+        int p2Score = 0;
+        for(int i = 0; i <= NUMHOUSES; i++) {
+            p1Score += pits[i];
+            p2Score += pits[P1STOREINDEX + 1 + i];
+        }
+        if(p1Score > p2Score)
+            return Game_Outcome.WIN;
+        else if(p1Score < p2Score)
+            return Game_Outcome.LOSS;
+        return Game_Outcome.TIE;
+    }
+
+    int getSeeds(int index) {
+        return pits[index];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(pits);
+    }
+}
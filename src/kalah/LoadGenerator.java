@@ -0,0 +1,195 @@
+package kalah;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+/**
+ * Drives a GameServer with many simulated clients at once and reports the move latency seen
+ * by the clients. Every client has its own connection and plays random legal moves, starting
+ * a new game when one ends, until it has made its share of moves. All clients run on one
+ * thread with non-blocking sockets, so the generator doesn't need a thread per client itself.
+ * A client answered with an ERROR counts it and disconnects.
+ * Usage: java kalah.LoadGenerator [clients] [movesPerClient] [port] [host]
+ * @author mpie374
+ */
+public class LoadGenerator {
+    private final int numClients;
+    private final int movesPerClient;
+    private final InetSocketAddress address;
+    private final long[] latencies;
+    private int numLatencies;
+    private int errors;
+
+    /**
+     * Simulated client's connection and game state
+     */
+    private static class Client {
+        final SocketChannel channel;
+        final ByteBuffer readBuffer = ByteBuffer.allocate(256);
+        final StringBuilder line = new StringBuilder(128);
+        final SplittableRandom random;
+        int movesLeft;
+        long sentAt;
+
+        Client(SocketChannel channel, int movesLeft, long seed) {
+            this.channel = channel;
+            this.movesLeft = movesLeft;
+            this.random = new SplittableRandom(seed);
+        }
+    }
+
+    public LoadGenerator(int numClients, int movesPerClient, InetSocketAddress address) {
+        this.numClients = numClients;
+        this.movesPerClient = movesPerClient;
+        this.address = address;
+        this.latencies = new long[numClients * movesPerClient];
+    }
+
+    /**
+     * Connects every client and runs until they have all made their moves
+     * @return - seconds taken
+     * @throws IOException if the selector fails
+     */
+    public double run() throws IOException {
+        long start = System.nanoTime();
+        try(Selector selector = Selector.open()) {
+            for(int i = 0; i < numClients; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT, new Client(channel, movesPerClient, i));
+            }
+            int open = numClients;
+            while(open > 0) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Client client = (Client) key.attachment();
+                    try {
+                        if(key.isConnectable()) {
+                            client.channel.finishConnect();
+                            key.interestOps(SelectionKey.OP_READ);
+                        } else if(key.isReadable() && !read(client)) {
+                            key.cancel();
+                            client.channel.close();
+                            open--;
+                        }
+                    } catch(IOException e) {
+                        errors++;
+                        key.cancel();
+                        client.channel.close();
+                        open--;
+                    }
+                }
+            }
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Reads what has arrived and answers each complete line
+     * @return - FALSE once the client has finished
+     */
+    private boolean read(Client client) throws IOException {
+        client.readBuffer.clear();
+        int bytes = client.channel.read(client.readBuffer);
+        if(bytes < 0)
+            return false;
+        for(int i = 0; i < bytes; i++) {
+            char c = (char) client.readBuffer.get(i);
+            if(c != '\n') {
+                client.line.append(c);
+                continue;
+            }
+            if(!respond(client, client.line.toString().trim()))
+                return false;
+            client.line.setLength(0);
+        }
+        return true;
+    }
+
+    /**
+     * Sends the client's next request in answer to a line from the server
+     * @return - FALSE once the client has finished
+     */
+    private boolean respond(Client client, String line) throws IOException {
+        long now = System.nanoTime();
+        if(client.sentAt != 0) {
+            latencies[numLatencies++] = now - client.sentAt;
+            client.movesLeft--;
+        }
+        //an ERROR has no board to play from, and may mean the server is ending the session
+        if(line.startsWith("ERROR")) {
+            errors++;
+            return false;
+        }
+        if(line.equals("BYE"))
+            return false;
+
+        String request;
+        if(client.movesLeft == 0) {
+            request = "quit";
+        } else if(line.startsWith("OVER")) {
+            request = "new";
+        } else {
+            //BOARD is followed by Player 1's Houses, then the Stores and Player 2's Houses
+            String[] words = line.substring(line.indexOf("BOARD") + 6, line.indexOf(" TURN")).split(" ");
+            int numHouses = words.length / 2 - 1;
+            int[] choices = new int[numHouses];
+            int numChoices = 0;
+            for(int house = 1; house <= numHouses; house++) {
+                if(!words[house - 1].equals("0"))
+                    choices[numChoices++] = house;
+            }
+            request = "move " + choices[client.random.nextInt(numChoices)];
+        }
+        //only moves are timed
+        client.sentAt = request.startsWith("move") ? now : 0;
+        ByteBuffer out = ByteBuffer.wrap((request + "\n").getBytes(StandardCharsets.US_ASCII));
+        while(out.hasRemaining()) {
+            client.channel.write(out);
+        }
+        return true;
+    }
+
+    /**
+     * Finds a percentile of the recorded latencies
+     * @param sorted - latencies in ascending order
+     * @param percentile - from 0 to 100
+     * @return - latency in nanoseconds
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if(sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    public static void main(String[] args) throws IOException {
+        int numClients = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int movesPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : GameServer.DEFAULT_PORT;
+        String host = args.length > 3 ? args[3] : "localhost";
+
+        LoadGenerator generator = new LoadGenerator(numClients, movesPerClient, new InetSocketAddress(host, port));
+        double seconds = generator.run();
+        long[] sorted = Arrays.copyOf(generator.latencies, generator.numLatencies);
+        Arrays.sort(sorted);
+        System.out.printf("%d clients, %d moves in %.2f s, %.0f moves/sec, %d errors%n",
+                numClients, sorted.length, seconds, sorted.length / seconds, generator.errors);
+        System.out.printf("latency p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", percentile(sorted, 50) / 1e6,
+                percentile(sorted, 99) / 1e6, (sorted.length > 0 ? sorted[sorted.length - 1] : 0) / 1e6);
+    }
+}
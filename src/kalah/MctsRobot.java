@@ -0,0 +1,330 @@
+package kalah;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Robot that chooses its move by Monte Carlo Tree Search. Each iteration walks down the tree
+ * choosing children by UCT, adds the children of the leaf it reaches, plays the rest of the
+ * game out with random moves and counts the result back up the path. The move played is the
+ * root child visited most.
+ * Tree nodes are stored in parallel primitive arrays indexed by node number, and a node's
+ * children are stored next to each other, so a tree is a handful of arrays rather than an
+ * object per node. Positions aren't stored: each iteration copies the root into a scratch
+ * BoardCore and sows the moves down the path, so iterations allocate nothing once the arrays
+ * have grown. With more than one thread the search is root parallel: every thread grows its
+ * own tree from a different seed and the root visit counts are added together.
+ * @author mpie374
+ */
+public class MctsRobot implements Robot {
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    private final long timeBudgetMillis;
+    private final long playoutBudget;
+    private final Tree[] trees;
+    private final ExecutorService pool;
+    private long lastPlayouts;
+    private long lastNanos;
+    private double lastWinRate;
+
+    /**
+     * Creates a robot limited by a per-move time and playout budget
+     * @param timeBudgetMillis - time each move may take, in milliseconds
+     * @param playoutBudget - playouts each move may run over all threads, or 0 for no limit
+     * @param threads - number of trees searched in parallel
+     * @param seed - seed of the playouts' random moves
+     */
+    public MctsRobot(long timeBudgetMillis, long playoutBudget, int threads, long seed) {
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.playoutBudget = playoutBudget;
+        this.trees = new Tree[Math.max(1, threads)];
+        for(int i = 0; i < trees.length; i++) {
+            trees[i] = new Tree(seed * 0x9E3779B97F4A7C15L + i);
+        }
+        this.pool = trees.length > 1 ? Executors.newFixedThreadPool(trees.length) : null;
+    }
+
+    /**
+     * Searches the current position until the budget is spent
+     * @param board - the current state of the playing board
+     * @param isPlayOneTurn - TRUE if the robot is playing as Player 1
+     * @return - the house number of the most visited move
+     */
+    public int chooseHouse(BoardView board, boolean isPlayOneTurn) {
+        long start = System.nanoTime();
+        long deadline = start + Math.min(timeBudgetMillis, Long.MAX_VALUE / 4000000L) * 1000000L;
+        long playoutsPerTree = playoutBudget == 0 ? Long.MAX_VALUE : Math.max(1, playoutBudget / trees.length);
+        if(pool == null) {
+            trees[0].search(board, isPlayOneTurn, deadline, playoutsPerTree);
+        } else {
+            List<Future<?>> searches = new ArrayList<>();
+            for(Tree tree : trees) {
+                searches.add(pool.submit(() -> tree.search(board, isPlayOneTurn, deadline, playoutsPerTree)));
+            }
+            try {
+                for(Future<?> search : searches) {
+                    search.get();
+                }
+            } catch(InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("MCTS search failed", e);
+            }
+        }
+        lastNanos = System.nanoTime() - start;
+
+        //add up the root children of every tree, which all list the same moves in the same order
+        int numChildren = trees[0].numChildren[0];
+        long[] visits = new long[numChildren];
+        double[] wins = new double[numChildren];
+        lastPlayouts = 0;
+        for(Tree tree : trees) {
+            lastPlayouts += tree.playouts;
+            int firstChild = tree.firstChild[0];
+            for(int c = 0; c < numChildren; c++) {
+                visits[c] += tree.visits[firstChild + c];
+                wins[c] += tree.wins[firstChild + c];
+            }
+        }
+        int best = 0;
+        for(int c = 1; c < numChildren; c++) {
+            if(visits[c] > visits[best])
+                best = c;
+        }
+        lastWinRate = visits[best] == 0 ? 0 : wins[best] / visits[best];
+        int houseIndex = trees[0].move[trees[0].firstChild[0] + best];
+        return isPlayOneTurn ? houseIndex + 1 : houseIndex - board.getNumHouses();
+    }
+
+    /**
+     * Describes how the last move scored in its playouts
+     * @return - the reason for the last move
+     */
+    public String getReason() {
+        return String.format("it scored %.0f%% in %d playouts", lastWinRate * 100, lastPlayouts);
+    }
+
+    public long getPlayouts() {
+        return lastPlayouts;
+    }
+
+    /**
+     * Finds the playout rate of the last move
+     * @return - playouts per second over all threads
+     */
+    public double getPlayoutsPerSecond() {
+        return lastNanos == 0 ? 0 : lastPlayouts * 1e9 / lastNanos;
+    }
+
+    /**
+     * Stops the robot's search threads. The robot must not be used afterwards.
+     */
+    public void shutdown() {
+        if(pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * One search tree with its own scratch board and random numbers, used by one thread
+     */
+    private static class Tree {
+        private static final int INITIAL_NODES = 1 << 12;
+
+        private final SplittableRandom random;
+        private BoardCore core;
+        private BoardCore root;
+        private int[] path = new int[64];
+        //node arrays, node 0 is the root
+        private int[] visits = new int[INITIAL_NODES];
+        private double[] wins = new double[INITIAL_NODES]; //for the player who made the node's move
+        private int[] move = new int[INITIAL_NODES]; //house index of the move into the node
+        private boolean[] moverIsPlayOne = new boolean[INITIAL_NODES]; //player who made that move
+        private int[] firstChild = new int[INITIAL_NODES];
+        private int[] numChildren = new int[INITIAL_NODES]; //-1 until the node is expanded
+        private int numNodes;
+        private long playouts;
+
+        Tree(long seed) {
+            random = new SplittableRandom(seed);
+        }
+
+        /**
+         * Runs iterations from a new root until the deadline or playout budget
+         */
+        void search(BoardView position, boolean isPlayOneTurn, long deadline, long playoutBudget) {
+            if(core == null || core.NUMHOUSES != position.getNumHouses()) {
+                core = new BoardCore(position.getNumHouses());
+                root = new BoardCore(position.getNumHouses());
+            }
+            root.copyFrom(position);
+            numNodes = 1;
+            visits[0] = 0;
+            wins[0] = 0;
+            moverIsPlayOne[0] = !isPlayOneTurn;
+            numChildren[0] = -1;
+            playouts = 0;
+            //the root is always expanded so every move gets a count, even with a tiny budget
+            expand(0, root, isPlayOneTurn);
+            do {
+                iterate(isPlayOneTurn);
+                playouts++;
+            } while(playouts < playoutBudget && ((playouts & 63) != 0 || System.nanoTime() - deadline < 0));
+        }
+
+        /**
+         * One selection, expansion, playout and backup from the root
+         */
+        private void iterate(boolean rootPlayOneTurn) {
+            core.copyFrom(root);
+            boolean isPlayOneTurn = rootPlayOneTurn;
+            int node = 0;
+            int depth = 0;
+            path[depth++] = 0;
+            //select down to a leaf, playing the moves on the scratch board
+            while(numChildren[node] > 0) {
+                node = select(node);
+                isPlayOneTurn = play(node, isPlayOneTurn);
+                if(depth == path.length)
+                    path = Arrays.copyOf(path, depth * 2);
+                path[depth++] = node;
+            }
+            //expand a leaf that has been visited before, then play out from one of its children
+            if(numChildren[node] == -1 && visits[node] > 0 && core.getHouseTotal(isPlayOneTurn) > 0) {
+                expand(node, core, isPlayOneTurn);
+                node = firstChild[node] + random.nextInt(numChildren[node]);
+                isPlayOneTurn = play(node, isPlayOneTurn);
+                if(depth == path.length)
+                    path = Arrays.copyOf(path, depth * 2);
+                path[depth++] = node;
+            }
+            double playerOneResult = playout(isPlayOneTurn);
+            for(int i = 0; i < depth; i++) {
+                int pathNode = path[i];
+                visits[pathNode]++;
+                wins[pathNode] += moverIsPlayOne[pathNode] ? playerOneResult : 1 - playerOneResult;
+            }
+        }
+
+        /**
+         * Picks the child with the highest UCT value, unvisited children first
+         */
+        private int select(int node) {
+            double logVisits = Math.log(visits[node]);
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            int end = firstChild[node] + numChildren[node];
+            for(int child = firstChild[node]; child < end; child++) {
+                if(visits[child] == 0)
+                    return child;
+                double value = wins[child] / visits[child] + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+                if(value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Plays a node's move on the scratch board
+         * @return - side to move afterwards
+         */
+        private boolean play(int node, boolean isPlayOneTurn) {
+            boolean extraTurn = core.sow(move[node], isPlayOneTurn) == BoardCore.EXTRA_TURN;
+            return extraTurn == isPlayOneTurn;
+        }
+
+        /**
+         * Adds a child for every legal move, next to each other at the end of the arrays
+         */
+        private void expand(int node, BoardCore position, boolean isPlayOneTurn) {
+            int firstIndex = isPlayOneTurn ? 0 : position.NUMHOUSES + 1;
+            if(numNodes + position.NUMHOUSES > visits.length)
+                grow();
+            firstChild[node] = numNodes;
+            int count = 0;
+            for(int i = firstIndex; i < firstIndex + position.NUMHOUSES; i++) {
+                if(position.getSeeds(i) == 0)
+                    continue;
+                int child = numNodes++;
+                visits[child] = 0;
+                wins[child] = 0;
+                move[child] = i;
+                moverIsPlayOne[child] = isPlayOneTurn;
+                numChildren[child] = -1;
+                count++;
+            }
+            numChildren[node] = count;
+        }
+
+        private void grow() {
+            int capacity = visits.length * 2;
+            visits = Arrays.copyOf(visits, capacity);
+            wins = Arrays.copyOf(wins, capacity);
+            move = Arrays.copyOf(move, capacity);
+            moverIsPlayOne = Arrays.copyOf(moverIsPlayOne, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            numChildren = Arrays.copyOf(numChildren, capacity);
+        }
+
+        /**
+         * Plays random moves on the scratch board until the game ends
+         * @return - 1 if Player 1 wins, 0.5 for a tie and 0 if Player 2 wins
+         */
+        private double playout(boolean isPlayOneTurn) {
+            int numHouses = core.NUMHOUSES;
+            while(core.getHouseTotal(isPlayOneTurn) > 0) {
+                int firstIndex = isPlayOneTurn ? 0 : numHouses + 1;
+                //start at a random house and take the first one with seeds from there
+                int house = random.nextInt(numHouses);
+                while(core.getSeeds(firstIndex + house) == 0) {
+                    house = house + 1 == numHouses ? 0 : house + 1;
+                }
+                boolean extraTurn = core.sow(firstIndex + house, isPlayOneTurn) == BoardCore.EXTRA_TURN;
+                isPlayOneTurn = extraTurn == isPlayOneTurn;
+            }
+            int p1Score = core.getScore(true);
+            int p2Score = core.getScore(false);
+            return p1Score > p2Score ? 1 : p1Score < p2Score ? 0 : 0.5;
+        }
+    }
+
+    /**
+     * Plays the robot as Player 2 against the 'best first move' rules as Player 1 and reports
+     * the results and playout rate.
+     * Usage: java kalah.MctsRobot [timeMillis] [threads] [games]
+     */
+    public static void main(String[] args) {
+        long timeMillis = args.length > 0 ? Long.parseLong(args[0]) : 50;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        MctsRobot robot = new MctsRobot(timeMillis, 0, threads, 1);
+        BmfRobot bmf = new BmfRobot();
+        GameEngine engine = new GameEngine();
+        int[] results = new int[Game_Outcome.values().length];
+        long playouts = 0;
+        long nanos = 0;
+        for(int game = 0; game < games; game++) {
+            engine.reset();
+            while(!engine.isGameOver()) {
+                if(engine.isPlayOneTurn()) {
+                    engine.play(bmf.chooseHouse(engine.getBoard(), true));
+                } else {
+                    engine.play(robot.chooseHouse(engine.getBoard(), false));
+                    playouts += robot.lastPlayouts;
+                    nanos += robot.lastNanos;
+                }
+            }
+            results[engine.getOutcome().ordinal()]++;
+        }
+        robot.shutdown();
+        System.out.printf("MCTS (P2, %d ms, %d threads) vs BMF (P1) over %d games: MCTS wins %d, loses %d, ties %d%n",
+                timeMillis, threads, games, results[Game_Outcome.LOSS.ordinal()], results[Game_Outcome.WIN.ordinal()],
+                results[Game_Outcome.TIE.ordinal()]);
+        System.out.printf("%.0f playouts/sec%n", playouts * 1e9 / nanos);
+    }
+}
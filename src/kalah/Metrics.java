@@ -0,0 +1,259 @@
+package kalah;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for moves, robot decisions, searches and game over
+ * handling, plus Flight Recorder events for each move and robot decision. Everything is off
+ * until setEnabled(true) is called; while off, each hook costs one read of the enabled flag.
+ * Counters are LongAdders so games on different threads don't contend for the same cache line.
+ * A hook calls start() before the work and one of the record methods after it, passing the
+ * start time back:
+ *     long started = Metrics.start();
+ *     ...
+ *     Metrics.recordMove(started, isPlayOneTurn, house, events);
+ * Usage: java kalah.Metrics [games] [rounds] measures the overhead of enabling metrics
+ * @author mpie374
+ */
+public final class Metrics {
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+
+    public enum Counter {
+        MOVES("moves"),
+        EXTRA_TURNS("extraTurns"),
+        CAPTURES("captures"),
+        EMPTY_HOUSES("emptyHouses"),
+        ROBOT_DECISIONS("robotDecisions"),
+        SEARCHES("searches"),
+        SEARCH_NODES("searchNodes"),
+        GAMES_OVER("gamesOver");
+
+        private final String label;
+        private final LongAdder adder = new LongAdder();
+
+        Counter(String label) {
+            this.label = label;
+        }
+
+        public long get() {
+            return adder.sum();
+        }
+    }
+
+    public static final LatencyHistogram MOVE_LATENCY = new LatencyHistogram("move");
+    public static final LatencyHistogram ROBOT_LATENCY = new LatencyHistogram("robotDecision");
+    public static final LatencyHistogram SEARCH_LATENCY = new LatencyHistogram("search");
+    public static final LatencyHistogram GAME_OVER_LATENCY = new LatencyHistogram("gameOver");
+    private static final LatencyHistogram[] HISTOGRAMS = {MOVE_LATENCY, ROBOT_LATENCY, SEARCH_LATENCY, GAME_OVER_LATENCY};
+
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Reads the clock if metrics are enabled
+     * @return - start time to pass to a record method, or NOT_TIMED
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Counts a move and what it led to
+     * @param started - value returned by start before the move
+     * @param isPlayOneTurn - TRUE if Player 1 moved
+     * @param house - house number of the move
+     * @param events - GameEngine event flags the move produced
+     */
+    public static void recordMove(long started, boolean isPlayOneTurn, int house, int events) {
+        if(started == NOT_TIMED)
+            return;
+        long nanos = System.nanoTime() - started;
+        if((events & GameEngine.EMPTY_HOUSE) != 0) {
+            Counter.EMPTY_HOUSES.adder.increment();
+        } else {
+            Counter.MOVES.adder.increment();
+            if((events & GameEngine.EXTRA_TURN) != 0)
+                Counter.EXTRA_TURNS.adder.increment();
+            if((events & GameEngine.CAPTURE) != 0)
+                Counter.CAPTURES.adder.increment();
+            MOVE_LATENCY.record(nanos);
+        }
+        MoveEvent event = new MoveEvent();
+        if(event.shouldCommit()) {
+            event.player = isPlayOneTurn ? 1 : 2;
+            event.house = house;
+            event.events = events;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Times a robot choosing its move
+     * @param started - value returned by start before the robot was asked
+     * @param house - house number chosen
+     * @param reason - reason the robot gave
+     */
+    public static void recordRobotDecision(long started, int house, String reason) {
+        if(started == NOT_TIMED)
+            return;
+        long nanos = System.nanoTime() - started;
+        Counter.ROBOT_DECISIONS.adder.increment();
+        ROBOT_LATENCY.record(nanos);
+        RobotDecisionEvent event = new RobotDecisionEvent();
+        if(event.shouldCommit()) {
+            event.house = house;
+            event.reason = reason;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Times one search
+     * @param started - value returned by start before the search
+     * @param nodes - positions the search visited
+     */
+    public static void recordSearch(long started, long nodes) {
+        if(started == NOT_TIMED)
+            return;
+        Counter.SEARCHES.adder.increment();
+        Counter.SEARCH_NODES.adder.add(nodes);
+        SEARCH_LATENCY.record(System.nanoTime() - started);
+    }
+
+    /**
+     * Times the end of game handling
+     * @param started - value returned by start before the game over handling
+     */
+    public static void recordGameOver(long started) {
+        if(started == NOT_TIMED)
+            return;
+        Counter.GAMES_OVER.adder.increment();
+        GAME_OVER_LATENCY.record(System.nanoTime() - started);
+    }
+
+    /**
+     * Sets every counter and histogram back to zero
+     */
+    public static void reset() {
+        for(Counter counter : Counter.values()) {
+            counter.adder.reset();
+        }
+        for(LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Formats the counters and a summary of each histogram as text, one value per line
+     * @return - the current metrics
+     */
+    public static String toText() {
+        StringBuilder text = new StringBuilder();
+        for(Counter counter : Counter.values()) {
+            text.append(counter.label).append(' ').append(counter.get()).append('\n');
+        }
+        for(LatencyHistogram histogram : HISTOGRAMS) {
+            long[] counts = histogram.getCounts();
+            long count = 0;
+            for(long bucketCount : counts) {
+                count += bucketCount;
+            }
+            text.append(histogram.getName()).append(" count ").append(count)
+                    .append(" meanNanos ").append(count == 0 ? 0 : histogram.getTotalNanos() / count)
+                    .append(" p50Nanos ").append(LatencyHistogram.percentile(counts, 50))
+                    .append(" p99Nanos ").append(LatencyHistogram.percentile(counts, 99))
+                    .append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Formats the counters and every histogram bucket as JSON
+     * @return - the current metrics
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\"counters\":{");
+        for(Counter counter : Counter.values()) {
+            if(counter.ordinal() > 0)
+                json.append(',');
+            json.append('"').append(counter.label).append("\":").append(counter.get());
+        }
+        json.append("},\"histograms\":{");
+        for(int h = 0; h < HISTOGRAMS.length; h++) {
+            long[] counts = HISTOGRAMS[h].getCounts();
+            if(h > 0)
+                json.append(',');
+            json.append('"').append(HISTOGRAMS[h].getName()).append("\":{\"totalNanos\":")
+                    .append(HISTOGRAMS[h].getTotalNanos()).append(",\"p50Nanos\":")
+                    .append(LatencyHistogram.percentile(counts, 50)).append(",\"p99Nanos\":")
+                    .append(LatencyHistogram.percentile(counts, 99)).append(",\"log2Buckets\":[");
+            //trailing empty buckets are left off
+            int last = counts.length - 1;
+            while(last > 0 && counts[last] == 0) {
+                last--;
+            }
+            for(int i = 0; i <= last; i++) {
+                if(i > 0)
+                    json.append(',');
+                json.append(counts[i]);
+            }
+            json.append("]}");
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Plays the same headless games with metrics off and on, alternating rounds so both see the
+     * same JIT state, and prints the cost per move of enabling metrics
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        GameEngine engine = new GameEngine();
+        long[] bestNanos = {Long.MAX_VALUE, Long.MAX_VALUE};
+        long moves = 0;
+        for(int round = 0; round < rounds * 2; round++) {
+            setEnabled(round % 2 == 1);
+            reset();
+            long start = System.nanoTime();
+            moves = playGames(engine, games);
+            bestNanos[round % 2] = Math.min(bestNanos[round % 2], System.nanoTime() - start);
+        }
+        setEnabled(true);
+        System.out.print(toText());
+        double offNanos = (double) bestNanos[0] / moves;
+        double onNanos = (double) bestNanos[1] / moves;
+        System.out.printf("%d moves per round, best of %d rounds%n", moves, rounds);
+        System.out.printf("metrics off %.1f ns/move, on %.1f ns/move, overhead %.1f ns/move (%.1f%%)%n",
+                offNanos, onNanos, onNanos - offNanos, 100 * (onNanos - offNanos) / offNanos);
+    }
+
+    private static long playGames(GameEngine engine, int games) {
+        BoardCore core = engine.getBoard().getCore();
+        BmfRobot bmf = new BmfRobot();
+        long moves = 0;
+        for(int game = 0; game < games; game++) {
+            SplittableRandom random = new SplittableRandom(game);
+            engine.reset();
+            while(!engine.isGameOver()) {
+                boolean isPlayOneTurn = engine.isPlayOneTurn();
+                engine.play(isPlayOneTurn ? SelfPlay.randomHouse(core, true, random) : bmf.chooseHouse(core, false));
+                moves++;
+            }
+        }
+        return moves;
+    }
+}
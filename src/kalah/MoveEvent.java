@@ -0,0 +1,35 @@
+package kalah;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event committed for every move played while metrics are enabled. There are
+ * millions of these in a self-play run, so no stack trace is recorded with them.
+ * @author mpie374
+ */
+@Name("kalah.Move")
+@Label("Move")
+@Category("Kalah")
+@Description("A move played on a board")
+@StackTrace(false)
+class MoveEvent extends Event {
+    @Label("Player")
+    int player;
+
+    @Label("House")
+    int house;
+
+    @Label("Events")
+    @Description("GameEngine event flags the move produced")
+    int events;
+
+    @Label("Time Taken")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
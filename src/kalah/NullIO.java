@@ -0,0 +1,36 @@
+package kalah;
+
+import com.qualitascorpus.testsupport.IO;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * IO for benchmarks and the differential fuzzer that throws output away and answers every
+ * prompt with a random house number from a seeded generator.
+ * @author mpie374
+ */
+public class NullIO implements IO {
+    private final SplittableRandom random;
+
+    public NullIO(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    public String readFromKeyboard(String prompt) {
+        return "";
+    }
+
+    public int readInteger(String prompt, int lower, int upper, int cancelResult, String cancelString) {
+        return lower + random.nextInt(upper - lower + 1);
+    }
+
+    public void print(String output) {
+    }
+
+    public void println(String output) {
+    }
+
+    public List<String> readTextFile(String fileName) {
+        return null;
+    }
+}
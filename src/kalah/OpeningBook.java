@@ -0,0 +1,184 @@
+package kalah;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Best moves for the positions reachable in the first few plies of a game, found offline by a
+ * deep search. Positions are keyed by their Zobrist hash including the side to move. The file
+ * is a header giving the variant and number of positions, the keys as a sorted long[], then one
+ * house number per key, so a lookup is a binary search over the keys.
+ * The file isn't read when the book is opened, it is memory-mapped the first time a position
+ * is looked up, so a book that is never used costs nothing at startup or on the heap.
+ * Usage: java kalah.OpeningBook build file plies depth
+ * @author mpie374
+ */
+public class OpeningBook {
+    private static final int MAGIC = 0x4B4F4231; //"KOB1"
+    private static final int HEADER_BYTES = 16;
+
+    private final Path file;
+    private volatile boolean loaded;
+    private int numHouses;
+    private int seedsPerHouse;
+    private LongBuffer keys;
+    private ByteBuffer moves;
+
+    private OpeningBook(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens a book without reading it
+     * @param file - file written by build
+     * @return - the book, loaded on first use
+     */
+    public static OpeningBook open(Path file) {
+        return new OpeningBook(file);
+    }
+
+    /**
+     * Maps the file the first time the book is used
+     */
+    private void load() {
+        if(loaded)
+            return;
+        synchronized(this) {
+            if(loaded)
+                return;
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if(buffer.getInt(0) != MAGIC)
+                    throw new IOException(file + " is not an opening book");
+                numHouses = buffer.getInt(4);
+                seedsPerHouse = buffer.getInt(8);
+                int size = buffer.getInt(12);
+                keys = buffer.position(HEADER_BYTES).slice().asLongBuffer().limit(size);
+                moves = buffer.position(HEADER_BYTES + size * 8).slice();
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Looks up the book move for a position
+     * @param board - the current state of the playing board
+     * @param isPlayOneTurn - side to move
+     * @return - house number of the book move, or 0 if the position isn't in the book
+     */
+    public int lookup(BoardView board, boolean isPlayOneTurn) {
+        load();
+        if(board.getNumHouses() != numHouses || board.getHouseTotal(true) + board.getHouseTotal(false)
+                + board.getSeeds(numHouses) + board.getSeeds(numHouses * 2 + 1) != numHouses * 2 * seedsPerHouse)
+            return 0;
+        long key = board.getHash(isPlayOneTurn);
+        int low = 0;
+        int high = keys.limit() - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = keys.get(middle);
+            if(middleKey < key)
+                low = middle + 1;
+            else if(middleKey > key)
+                high = middle - 1;
+            else
+                return moves.get(middle);
+        }
+        return 0;
+    }
+
+    /**
+     * Retrieves the number of positions in the book
+     * @return - size of the book
+     */
+    public int getSize() {
+        load();
+        return keys.limit();
+    }
+
+    /**
+     * Searches every position reachable in the first plies of a game on the standard board and
+     * writes the best moves found to a book file
+     * @param file - file to write
+     * @param plies - number of moves from the start position to cover, extra turns included
+     * @param depth - search depth used for each position
+     * @return - number of positions in the book
+     * @throws IOException if the file can't be written
+     */
+    public static int build(Path file, int plies, int depth) throws IOException {
+        Board board = new Board();
+        Map<Long, BoardCore> positions = new HashMap<>();
+        collect(board.getCore(), true, plies, positions);
+        long[] sortedKeys = new long[positions.size()];
+        int size = 0;
+        for(long key : positions.keySet()) {
+            sortedKeys[size++] = key;
+        }
+        Arrays.sort(sortedKeys);
+
+        SearchRobot robot = new SearchRobot(Long.MAX_VALUE / 1000000L, 0, depth, new TranspositionTable(1 << 26));
+        byte[] bookMoves = new byte[size];
+        for(int i = 0; i < size; i++) {
+            BoardCore core = positions.get(sortedKeys[i]);
+            //the key only differs from the pits' hash when Player 1 is to move
+            bookMoves[i] = (byte) robot.chooseHouse(core, sortedKeys[i] != core.getHash());
+        }
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(board.NUMHOUSES);
+            out.writeInt(board.getSeedsPerHouse());
+            out.writeInt(size);
+            for(long key : sortedKeys) {
+                out.writeLong(key);
+            }
+            out.write(bookMoves);
+        }
+        return size;
+    }
+
+    /**
+     * Adds every position reachable within the given number of plies where the side to move
+     * has a move
+     */
+    private static void collect(BoardCore core, boolean isPlayOneTurn, int plies, Map<Long, BoardCore> positions) {
+        if(core.getHouseTotal(isPlayOneTurn) == 0)
+            return;
+        positions.putIfAbsent(core.getHash(isPlayOneTurn), new BoardCore(core));
+        if(plies == 0)
+            return;
+        int firstIndex = isPlayOneTurn ? 0 : core.NUMHOUSES + 1;
+        for(int i = firstIndex; i < firstIndex + core.NUMHOUSES; i++) {
+            if(core.getSeeds(i) == 0)
+                continue;
+            boolean extraTurn = core.makeMove(i, isPlayOneTurn) == BoardCore.EXTRA_TURN;
+            collect(core, extraTurn == isPlayOneTurn, plies - 1, positions);
+            core.unmakeMove();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length == 4 && args[0].equals("build")) {
+            long start = System.nanoTime();
+            int size = build(Paths.get(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            System.out.printf("Built %s with %d positions in %.1f s%n", args[1], size, (System.nanoTime() - start) / 1e9);
+        } else {
+            System.out.println("Usage: OpeningBook build file plies depth");
+        }
+    }
+}
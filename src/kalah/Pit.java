@@ -2,20 +2,32 @@ package kalah;
 
 /**
  * Abstract class that holds most functionality for both the House
- * and Store objects. This allows both House and Store to be extended
- * and ArrayLists of both objects to be held together in the creation
- * of the board.
+ * and Store objects. Each Pit is a view over one slot of the BoardCore,
+ * so the seeds themselves live in the core's flat array. This allows both
+ * House and Store to be extended and ArrayLists of both objects to be held
+ * together in the creation of the board.
  * @author mpie374
  */
 public abstract class Pit {
-    protected int numSeeds;
+    protected final BoardCore core;
+    protected final int index;
+
+    /**
+     * Creates a view over a single pit of the core
+     * @param core - the board core holding the seeds
+     * @param index - index of this pit in the core
+     */
+    Pit(BoardCore core, int index) {
+        this.core = core;
+        this.index = index;
+    }
 
     /**
      * Adds seeds to the pit
      * @param seeds - number of seeds to be added
      */
     public void addSeeds(int seeds) {
-        numSeeds += seeds;
+        core.setSeeds(index, core.getSeeds(index) + seeds);
     }
 
     /**
@@ -23,22 +35,22 @@ public abstract class Pit {
      * @return - the number of seeds
      */
     public int getNumSeeds() {
-        return numSeeds;
+        return core.getSeeds(index);
     }
 
     /**
      * Empties the Pit at the start of each turn and when seeds are captured
      */
     public void emptyPit() {
-        numSeeds = 0;
+        core.setSeeds(index, 0);
     }
 
     /**
-     * Clones the pit for the dummy board
+     * Sets the number of seeds in the pit
      * @param clonedSeeds
      */
     public void clonePit(int clonedSeeds) {
-        numSeeds = clonedSeeds;
+        core.setSeeds(index, clonedSeeds);
     }
 
     /**
@@ -47,7 +59,7 @@ public abstract class Pit {
      * @return - the number of seeds to be captured
      */
     public int captureSeeds() {
-        int seeds = numSeeds;
+        int seeds = getNumSeeds();
         emptyPit();
         return seeds;
     }
@@ -58,8 +70,6 @@ public abstract class Pit {
      * @return - number of seeds in the pit as a String
      */
     public String toString() {
-        if(numSeeds < 10)
-            return " " + numSeeds;
-        else return String.valueOf(numSeeds);
+        return BoardRenderer.padSeeds(getNumSeeds());
     }
 }
@@ -4,34 +4,45 @@ import java.util.ArrayList;
 
 /**
  * Player class that holds each individual players part of the playing board.
- * It handles the creation of their House's and Store on the board and handles
- * their score.
+ * It handles the creation of their House's and Store views on the board core and
+ * handles their score.
  * @author mpie374
  */
 public class Player {
     private int NUMHOUSES; //number of houses belonging to each player
     private ArrayList<Pit> playerPits;
+    private BoardCore core;
+    private boolean isPlayerOne;
     private int score;
 
     /**
      * Default Player constructor
+     * @param numHouses - number of houses belonging to the player
+     * @param seedsPerHouse - number of seeds each house starts with
+     * @param core - the board core holding the seeds
+     * @param firstIndex - index of the player's first House in the core
      */
-    Player(int numHouses) {
+    Player(int numHouses, int seedsPerHouse, BoardCore core, int firstIndex) {
         //initialise houses and player store
         NUMHOUSES = numHouses;
-        initialisePlayerPits();
+        this.core = core;
+        this.isPlayerOne = firstIndex == 0;
+        initialisePlayerPits(seedsPerHouse, core, firstIndex);
         score = 0;
     }
 
     /**
-     * Initialises the players Pit's as an ArrayList<Pit> and adds their Store.
+     * Initialises the players Pit's as an ArrayList<Pit> of views over the core and adds their Store.
+     * @param seedsPerHouse - number of seeds each house starts with
+     * @param core - the board core holding the seeds
+     * @param firstIndex - index of the player's first House in the core
      */
-    private void initialisePlayerPits() {
+    private void initialisePlayerPits(int seedsPerHouse, BoardCore core, int firstIndex) {
         playerPits = new ArrayList<>();
         for(int i = 0; i < NUMHOUSES; i++) {
-            playerPits.add(new House());
+            playerPits.add(new House(core, firstIndex + i, seedsPerHouse));
         }
-        playerPits.add(new Store());
+        playerPits.add(new Store(core, firstIndex + NUMHOUSES));
     }
 
     /**
@@ -43,13 +54,11 @@ public class Player {
     }
 
     /**
-     * Calculates the Player's score by iterating through the
-     * number of seeds stored in each Pit
+     * Calculates the Player's score, the seeds in their Store plus those left in their Houses,
+     * from the totals the board core keeps. Calling it again gives the same score.
      */
     public void calcScore() {
-        for(int i = 0; i < playerPits.size(); i++) {
-            score += playerPits.get(i).getNumSeeds();
-        }
+        score = core.getScore(isPlayerOne);
     }
 
     /**
@@ -0,0 +1,141 @@
+package kalah;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Search robot that keeps thinking while the human chooses their move. When pondering starts,
+ * a background thread tries each move the human could make and searches the robot's reply to
+ * it, keeping the answers by position. Once the human has moved the thread is cancelled, and
+ * if the position reached was one already searched the answer is played straight away;
+ * otherwise the robot searches as normal. Both searches share one transposition table, so
+ * even a wrong guess leaves useful entries behind.
+ * @author mpie374
+ */
+public class PonderingRobot implements Robot {
+    private final SearchRobot robot;
+    private final SearchRobot ponderRobot;
+    private final ConcurrentHashMap<Long, int[]> answers = new ConcurrentHashMap<>(); //hash -> {house, depth}
+    private Thread ponderThread;
+    private volatile boolean stopping;
+    private String reason = "";
+    private int ponderHits;
+    private int ponderMisses;
+
+    /**
+     * Creates a pondering robot
+     * @param timeBudgetMillis - time each move, and each pondered reply, may take in milliseconds
+     * @param nodeBudget - positions each search may visit, or 0 for no limit
+     * @param maxDepth - deepest search to try, in plies
+     * @param table - table shared by the robot's own and pondering searches
+     */
+    public PonderingRobot(long timeBudgetMillis, long nodeBudget, int maxDepth, TranspositionTable table) {
+        this.robot = new SearchRobot(timeBudgetMillis, nodeBudget, maxDepth, table);
+        this.ponderRobot = new SearchRobot(timeBudgetMillis, nodeBudget, maxDepth, table);
+    }
+
+    /**
+     * Plays the pondered answer if the position was searched while the opponent was thinking,
+     * otherwise searches the position now
+     * @param board - the current state of the playing board
+     * @param isPlayOneTurn - TRUE if the robot is playing as Player 1
+     * @return - the house number of the chosen move
+     */
+    public int chooseHouse(BoardView board, boolean isPlayOneTurn) {
+        stopPondering();
+        int[] answer = answers.get(board.getHash(isPlayOneTurn));
+        int firstIndex = isPlayOneTurn ? 0 : board.getNumHouses() + 1;
+        //a hash collision could give a house that is empty here, so the answer is checked
+        if(answer != null && board.getSeeds(firstIndex + answer[0] - 1) > 0) {
+            ponderHits++;
+            reason = "it has the best score of a " + answer[1] + " ply search";
+            return answer[0];
+        }
+        ponderMisses++;
+        int house = robot.chooseHouse(board, isPlayOneTurn);
+        reason = robot.getReason();
+        return house;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Starts searching the replies to each of the opponent's moves on a background thread
+     * @param board - the current state of the playing board, copied before the thread starts
+     * @param isOpponentPlayOne - TRUE if the opponent is Player 1
+     */
+    public void startPondering(BoardView board, boolean isOpponentPlayOne) {
+        stopPondering();
+        answers.clear();
+        stopping = false;
+        ponderRobot.resetCancel();
+        BoardCore position = new BoardCore(board.getNumHouses());
+        position.copyFrom(board);
+        ponderThread = new Thread(() -> ponder(position, isOpponentPlayOne), "kalah-ponder");
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+
+    /**
+     * Tries each of the opponent's moves and searches the robot's reply
+     */
+    private void ponder(BoardCore core, boolean isOpponentPlayOne) {
+        int firstIndex = isOpponentPlayOne ? 0 : core.NUMHOUSES + 1;
+        for(int i = firstIndex; i < firstIndex + core.NUMHOUSES && !stopping; i++) {
+            if(core.getSeeds(i) == 0)
+                continue;
+            //after an extra turn the opponent moves again, and after the last move nobody does
+            boolean extraTurn = core.makeMove(i, isOpponentPlayOne) == BoardCore.EXTRA_TURN;
+            if(!extraTurn && core.getHouseTotal(!isOpponentPlayOne) > 0) {
+                long key = core.getHash(!isOpponentPlayOne);
+                int house = ponderRobot.chooseHouse(core, !isOpponentPlayOne);
+                //a cancelled search only got part way, so its answer isn't kept
+                if(!stopping)
+                    answers.put(key, new int[] {house, ponderRobot.getCompletedDepth()});
+            }
+            core.unmakeMove();
+        }
+    }
+
+    /**
+     * Cancels the background search and waits for the thread to finish
+     */
+    public void stopPondering() {
+        if(ponderThread == null)
+            return;
+        stopping = true;
+        ponderRobot.cancel();
+        try {
+            ponderThread.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ponderThread = null;
+    }
+
+    /**
+     * Counts the moves answered from pondering
+     * @return - number of moves played from a pondered answer
+     */
+    public int getPonderHits() {
+        return ponderHits;
+    }
+
+    /**
+     * Counts the moves that had to be searched after the opponent moved
+     * @return - number of moves searched on the robot's own turn
+     */
+    public int getPonderMisses() {
+        return ponderMisses;
+    }
+
+    /**
+     * Stops pondering and the robot's search threads. The robot must not be used afterwards.
+     */
+    public void shutdown() {
+        stopPondering();
+        robot.shutdown();
+        ponderRobot.shutdown();
+    }
+}
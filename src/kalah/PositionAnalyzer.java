@@ -0,0 +1,296 @@
+package kalah;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Annotates a file of positions with the best move and a score for the side to move, for the
+ * coaching tool. Each input line is a position in the form the GameServer sends: every pit's
+ * seeds (P1's Houses, P1's Store, P2's Houses then P2's Store), then P1 or P2 for the side to
+ * move, optionally after the word TURN. Each output line repeats the position and adds
+ * BEST house SCORE seeds WHY reason, or ERROR with a message for a line that isn't a position
+ * or has no legal move.
+ * Lines are read in chunks, and each chunk is evaluated as one task on a fork-join pool. Output is
+ * written in input order as the oldest chunk finishes. Only a few chunks per thread are in
+ * flight, so memory stays bounded however long the input is. Each thread of the pool has its own
+ * robot: the 'best first move' rules of Kalah.robotTurn, or any Tournament strategy such as a
+ * deeper search. Results are kept in an LRU cache keyed by position, so a position that appears
+ * again is served without being evaluated again.
+ * For the bmf strategy the score is the mover's lead in their Store after the move. For a search
+ * it is the seeds the mover ends ahead with the best play found.
+ * Usage: java kalah.Kalah analyze input|- output|- [strategy] [threads] [cacheSize]
+ * @author mpie374
+ */
+public class PositionAnalyzer {
+    private static final int CHUNK_LINES = 256;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int CACHE_SEGMENTS = 16;
+
+    private final ForkJoinPool pool;
+    private final int threads;
+    private final ThreadLocal<Robot> robots;
+    private final ThreadLocal<BoardCore[]> cores = ThreadLocal.withInitial(() -> new BoardCore[1]);
+    private final ResultCache cache;
+    private final LongAdder positions = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Creates an analyzer
+     * @param strategy - bmf, or a Tournament strategy such as search:12
+     * @param threads - threads positions are evaluated on
+     * @param cacheSize - results kept in the cache, 0 for none
+     */
+    public PositionAnalyzer(String strategy, int threads, int cacheSize) {
+        LongFunction<Robot> factory = Tournament.strategy(strategy);
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+        this.robots = ThreadLocal.withInitial(() -> factory.apply(0));
+        this.cache = new ResultCache(cacheSize);
+    }
+
+    /**
+     * Analyzes every line of the input, writing one output line per input line in order
+     * @param in - positions, one per line
+     * @param out - results
+     * @throws IOException if reading or writing fails
+     * @throws InterruptedException if interrupted while waiting for a chunk
+     */
+    public void analyze(BufferedReader in, Writer out) throws IOException, InterruptedException {
+        ArrayDeque<Future<String[]>> inFlight = new ArrayDeque<>();
+        String[] chunk = new String[CHUNK_LINES];
+        int lines = 0;
+        String line;
+        while((line = in.readLine()) != null) {
+            chunk[lines++] = line;
+            if(lines == CHUNK_LINES) {
+                if(inFlight.size() == threads * CHUNKS_PER_THREAD)
+                    write(inFlight.removeFirst(), out);
+                String[] full = chunk;
+                inFlight.addLast(pool.submit(() -> evaluateChunk(full, CHUNK_LINES)));
+                chunk = new String[CHUNK_LINES];
+                lines = 0;
+            }
+        }
+        if(lines > 0) {
+            String[] last = chunk;
+            int count = lines;
+            inFlight.addLast(pool.submit(() -> evaluateChunk(last, count)));
+        }
+        while(!inFlight.isEmpty()) {
+            write(inFlight.removeFirst(), out);
+        }
+        out.flush();
+    }
+
+    private void write(Future<String[]> chunk, Writer out) throws IOException, InterruptedException {
+        try {
+            for(String result : chunk.get()) {
+                out.write(result);
+                out.write('\n');
+            }
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("Analysis failed", e.getCause());
+        }
+    }
+
+    /**
+     * Evaluates the lines of a chunk in place
+     * @return - the results, in the same order
+     */
+    private String[] evaluateChunk(String[] lines, int count) {
+        String[] results = count == lines.length ? lines : Arrays.copyOf(lines, count);
+        for(int i = 0; i < count; i++) {
+            results[i] = evaluate(results[i]);
+        }
+        positions.add(count);
+        return results;
+    }
+
+    /**
+     * Evaluates one position, from the cache if it has been seen before
+     * @param line - the position
+     * @return - the result line
+     */
+    String evaluate(String line) {
+        String[] words = line.trim().split(" +");
+        int turnWord = words.length - 1;
+        boolean isPlayOneTurn = words[turnWord].equals("P1");
+        if(!isPlayOneTurn && !words[turnWord].equals("P2"))
+            return error(line, "no side to move");
+        int numPits = words.length > 1 && words[turnWord - 1].equals("TURN") ? turnWord - 1 : turnWord;
+        if(numPits < 4 || numPits % 2 != 0)
+            return error(line, "expected an even number of pits");
+
+        BoardCore[] holder = cores.get();
+        if(holder[0] == null || holder[0].BOARDSIZE != numPits)
+            holder[0] = new BoardCore(numPits / 2 - 1);
+        BoardCore core = holder[0];
+        try {
+            for(int i = 0; i < numPits; i++) {
+                int seeds = Integer.parseInt(words[i]);
+                if(seeds < 0)
+                    return error(line, "negative seeds");
+                core.setSeeds(i, seeds);
+            }
+        } catch(NumberFormatException e) {
+            return error(line, "bad seed count");
+        }
+        if(core.getHouseTotal(isPlayOneTurn) == 0)
+            return error(line, "no legal move");
+
+        StringBuilder position = new StringBuilder(line.length() + 8);
+        for(int i = 0; i < numPits; i++) {
+            position.append(core.getSeeds(i)).append(' ');
+        }
+        position.append("TURN ").append(isPlayOneTurn ? "P1" : "P2");
+        String key = position.toString();
+        String annotation = cache.get(core.getHash(isPlayOneTurn), key);
+        if(annotation != null) {
+            cacheHits.increment();
+        } else {
+            annotation = annotate(core, isPlayOneTurn);
+            cache.put(core.getHash(isPlayOneTurn), key, annotation);
+        }
+        return position.append(annotation).toString();
+    }
+
+    /**
+     * Chooses the best move with this thread's robot and scores it
+     */
+    private String annotate(BoardCore core, boolean isPlayOneTurn) {
+        Robot robot = robots.get();
+        int house = robot.chooseHouse(core, isPlayOneTurn);
+        int score;
+        if(robot instanceof SearchRobot) {
+            score = ((SearchRobot) robot).getScore();
+        } else {
+            int startHouseIndex = isPlayOneTurn ? house - 1 : house + core.NUMHOUSES;
+            core.makeMove(startHouseIndex, isPlayOneTurn);
+            score = core.getStoreTotal(isPlayOneTurn) - core.getStoreTotal(!isPlayOneTurn);
+            core.unmakeMove();
+        }
+        return " BEST " + house + " SCORE " + score + " WHY " + robot.getReason();
+    }
+
+    private String error(String line, String message) {
+        errors.increment();
+        return line + " ERROR " + message;
+    }
+
+    public long getPositions() {
+        return positions.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Stops the pool once the last chunk is done
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 2) {
+            System.out.println("Usage: Kalah analyze input|- output|- [strategy] [threads] [cacheSize]");
+            return;
+        }
+        String strategy = args.length > 2 ? args[2] : "bmf";
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int cacheSize = args.length > 4 ? Integer.parseInt(args[4]) : 1 << 16;
+        //the report goes wherever the results don't
+        PrintStream report = args[1].equals("-") ? System.err : System.out;
+
+        PositionAnalyzer analyzer = new PositionAnalyzer(strategy, threads, cacheSize);
+        long start = System.nanoTime();
+        try(BufferedReader in = args[0].equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII))
+                : Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.US_ASCII);
+            Writer out = args[1].equals("-")
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII))
+                : Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.US_ASCII)) {
+            analyzer.analyze(in, out);
+        } finally {
+            analyzer.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long positions = analyzer.getPositions();
+        report.printf("Analyzed %d positions with %s on %d threads in %.2f s, %.0f positions/s%n", positions,
+                strategy, threads, seconds, positions / seconds);
+        report.printf("Cache hits %d (%.1f%%), errors %d%n", analyzer.getCacheHits(),
+                positions == 0 ? 0 : 100.0 * analyzer.getCacheHits() / positions, analyzer.getErrors());
+    }
+
+    /**
+     * Least recently used cache of annotations, split into segments by hash so threads rarely
+     * wait for each other. Entries are checked against the whole position, so a hash collision
+     * can't return another position's result.
+     */
+    private static class ResultCache {
+        private final List<Map<Long, String[]>> segments = new ArrayList<>();
+
+        ResultCache(int capacity) {
+            int segmentCapacity = (capacity + CACHE_SEGMENTS - 1) / CACHE_SEGMENTS;
+            for(int i = 0; capacity > 0 && i < CACHE_SEGMENTS; i++) {
+                segments.add(new LinkedHashMap<Long, String[]>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    protected boolean removeEldestEntry(Map.Entry<Long, String[]> eldest) {
+                        return size() > segmentCapacity;
+                    }
+                });
+            }
+        }
+
+        /**
+         * Finds a cached annotation
+         * @param hash - hash of the position and side to move
+         * @param position - the position, to rule out collisions
+         * @return - the annotation, or null if it isn't cached
+         */
+        String get(long hash, String position) {
+            if(segments.isEmpty())
+                return null;
+            Map<Long, String[]> segment = segments.get((int) (hash >>> 60));
+            synchronized(segment) {
+                String[] entry = segment.get(hash);
+                return entry != null && entry[0].equals(position) ? entry[1] : null;
+            }
+        }
+
+        void put(long hash, String position, String annotation) {
+            if(segments.isEmpty())
+                return;
+            Map<Long, String[]> segment = segments.get((int) (hash >>> 60));
+            synchronized(segment) {
+                segment.put(hash, new String[] {position, annotation});
+            }
+        }
+    }
+}
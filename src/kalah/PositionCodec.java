@@ -0,0 +1,235 @@
+package kalah;
+
+/**
+ * Ranks configurations of seeds in a fixed number of pits to dense indexes with the
+ * combinatorial number system, and turns indexes back into configurations. The configurations
+ * with s seeds in total are ranked 0 to count(s) - 1, ordered by the seeds in the first pit,
+ * then the second, and so on. Levels are also laid end to end, so every configuration with at
+ * most maxSeeds seeds has a unique index below size(). Tables sized with count or size hold
+ * exactly one slot per configuration, with no collisions and no wasted slots.
+ * A codec can cover any run of pits, such as both Players' Houses for endgame tables, or a
+ * whole board including the Stores (forBoard), where every position of a game has the same total.
+ * @author mpie374
+ */
+public final class PositionCodec {
+    private final int numPits;
+    private final int maxSeeds;
+    private final long[][] counts; //counts[k][s] = ways to place s seeds in k pits
+    private final long[] levelOffsets; //index of the first configuration with s seeds
+
+    /**
+     * Creates a codec
+     * @param numPits - number of pits in a configuration
+     * @param maxSeeds - most seeds in a configuration
+     * @throws IllegalArgumentException if there are too many configurations to index with a long
+     */
+    public PositionCodec(int numPits, int maxSeeds) {
+        this.numPits = numPits;
+        this.maxSeeds = maxSeeds;
+        this.counts = new long[numPits + 2][maxSeeds + 1];
+        this.levelOffsets = new long[maxSeeds + 2];
+        try {
+            counts[0][0] = 1;
+            for(int k = 1; k <= numPits + 1; k++) {
+                long sum = 0;
+                for(int s = 0; s <= maxSeeds; s++) {
+                    sum = Math.addExact(sum, counts[k - 1][s]);
+                    counts[k][s] = sum;
+                }
+            }
+            for(int s = 0; s <= maxSeeds; s++) {
+                levelOffsets[s + 1] = Math.addExact(levelOffsets[s], counts[numPits][s]);
+            }
+        } catch(ArithmeticException e) {
+            throw new IllegalArgumentException(numPits + " pits with up to " + maxSeeds + " seeds have too many configurations to index");
+        }
+    }
+
+    /**
+     * Creates a codec for every pit of a board, Stores included
+     * @param numHouses - number of Houses per Player
+     * @param seedsPerHouse - seeds each House starts with, which fixes the total
+     * @return - codec over BOARDSIZE pits
+     */
+    public static PositionCodec forBoard(int numHouses, int seedsPerHouse) {
+        return new PositionCodec(numHouses * 2 + 2, numHouses * 2 * seedsPerHouse);
+    }
+
+    public int getNumPits() {
+        return numPits;
+    }
+
+    public int getMaxSeeds() {
+        return maxSeeds;
+    }
+
+    /**
+     * Counts the configurations with exactly the given number of seeds
+     * @param total - seeds in the configuration
+     * @return - number of configurations, the size of that level's table
+     */
+    public long count(int total) {
+        return counts[numPits][total];
+    }
+
+    /**
+     * Counts every configuration with up to maxSeeds seeds
+     * @return - size of a table indexed by index
+     */
+    public long size() {
+        return levelOffsets[maxSeeds + 1];
+    }
+
+    /**
+     * Finds the index of the first configuration with the given number of seeds
+     * @param total - seeds in the configuration
+     * @return - offset of that level
+     */
+    public long levelOffset(int total) {
+        return levelOffsets[total];
+    }
+
+    /**
+     * Ranks a configuration among those with the same number of seeds
+     * @param config - seeds in each pit
+     * @param offset - position of the first pit in config
+     * @param total - seeds in the configuration
+     * @return - rank from 0 to count(total) - 1
+     */
+    public long rank(int[] config, int offset, int total) {
+        long rank = 0;
+        int remaining = total;
+        for(int i = 0; i < numPits - 1; i++) {
+            int pitsAfter = numPits - i - 1;
+            int seeds = config[offset + i];
+            //configurations that put fewer seeds in this pit come first
+            rank += counts[pitsAfter + 1][remaining] - (remaining - seeds >= 0 ? counts[pitsAfter + 1][remaining - seeds] : 0);
+            remaining -= seeds;
+        }
+        return rank;
+    }
+
+    /**
+     * Finds the index of a configuration among every configuration the codec covers
+     * @param config - seeds in each pit
+     * @return - index from 0 to size() - 1
+     */
+    public long index(int[] config) {
+        int total = 0;
+        for(int i = 0; i < numPits; i++) {
+            total += config[i];
+        }
+        return levelOffsets[total] + rank(config, 0, total);
+    }
+
+    /**
+     * Ranks the pits of a board, Stores included, for a codec made by forBoard
+     * @param core - the position
+     * @return - rank among the positions with the same number of seeds
+     */
+    public long rank(BoardCore core) {
+        return rank(core.pits, 0, maxSeeds);
+    }
+
+    /**
+     * Turns a rank back into a configuration
+     * @param rank - rank within the level
+     * @param total - seeds in the configuration
+     * @param config - filled with the configuration
+     * @param offset - position of the first pit in config
+     */
+    public void unrank(long rank, int total, int[] config, int offset) {
+        int remaining = total;
+        for(int i = 0; i < numPits - 1; i++) {
+            int pitsAfter = numPits - i - 1;
+            int seeds = 0;
+            while(rank >= counts[pitsAfter][remaining - seeds]) {
+                rank -= counts[pitsAfter][remaining - seeds];
+                seeds++;
+            }
+            config[offset + i] = seeds;
+            remaining -= seeds;
+        }
+        config[offset + numPits - 1] = remaining;
+    }
+
+    /**
+     * Turns an index back into a configuration
+     * @param index - index from 0 to size() - 1
+     * @param config - filled with the configuration
+     */
+    public void unindex(long index, int[] config) {
+        int total = 0;
+        while(levelOffsets[total + 1] <= index) {
+            total++;
+        }
+        unrank(index - levelOffsets[total], total, config, 0);
+    }
+
+    /**
+     * Ranks many configurations with the same number of seeds, stored one after another
+     * @param configs - numPits values per configuration
+     * @param total - seeds in every configuration
+     * @param ranks - filled with one rank per configuration
+     * @param count - number of configurations
+     */
+    public void rankAll(int[] configs, int total, long[] ranks, int count) {
+        for(int c = 0; c < count; c++) {
+            ranks[c] = rank(configs, c * numPits, total);
+        }
+    }
+
+    /**
+     * Turns many ranks with the same number of seeds back into configurations
+     * @param ranks - ranks within the level
+     * @param total - seeds in every configuration
+     * @param configs - filled with numPits values per configuration
+     * @param count - number of configurations
+     */
+    public void unrankAll(long[] ranks, int total, int[] configs, int count) {
+        for(int c = 0; c < count; c++) {
+            unrank(ranks[c], total, configs, c * numPits);
+        }
+    }
+
+    /**
+     * Fills configs with a consecutive run of a level, from the given rank on. Stepping from one
+     * configuration to the next is cheaper than unranking each, so whole tables can be walked
+     * in index order this way.
+     * @param firstRank - rank of the first configuration
+     * @param total - seeds in every configuration
+     * @param configs - filled with numPits values per configuration
+     * @param count - number of configurations, at most count(total) - firstRank
+     */
+    public void unrankRange(long firstRank, int total, int[] configs, int count) {
+        if(count == 0)
+            return;
+        unrank(firstRank, total, configs, 0);
+        for(int c = 1; c < count; c++) {
+            int from = (c - 1) * numPits;
+            int to = c * numPits;
+            System.arraycopy(configs, from, configs, to, numPits);
+            next(configs, to);
+        }
+    }
+
+    /**
+     * Steps a configuration to the next one in rank order: the last pit before the final one
+     * that still has seeds after it gains a seed, and everything after it moves to the final pit
+     */
+    private void next(int[] configs, int offset) {
+        int last = offset + numPits - 1;
+        int i = last - 1;
+        //find the rightmost pit, not counting the final one, with seeds still to its right
+        int after = configs[last];
+        while(after == 0) {
+            i--;
+            after += configs[i + 1];
+        }
+        configs[i]++;
+        for(int j = i + 1; j < last; j++) {
+            configs[j] = 0;
+        }
+        configs[last] = after - 1;
+    }
+}
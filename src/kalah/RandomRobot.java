@@ -0,0 +1,41 @@
+package kalah;
+
+import java.util.SplittableRandom;
+
+/**
+ * Robot that plays a random legal move, as a baseline for other strategies
+ * @author mpie374
+ */
+public class RandomRobot implements Robot {
+    private final SplittableRandom random;
+
+    /**
+     * Creates a robot with its own random number generator
+     * @param seed - seed of the generator
+     */
+    public RandomRobot(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Picks a random house with seeds in it
+     * @param board - the current state of the playing board
+     * @param isPlayOneTurn - TRUE if the robot is playing as Player 1
+     * @return - the house number of the chosen move, or -1 if there is no legal move
+     */
+    public int chooseHouse(BoardView board, boolean isPlayOneTurn) {
+        if(board.getHouseTotal(isPlayOneTurn) == 0)
+            return -1;
+        int numHouses = board.getNumHouses();
+        int firstIndex = isPlayOneTurn ? 0 : numHouses + 1;
+        int house;
+        do {
+            house = 1 + random.nextInt(numHouses);
+        } while(board.getSeeds(firstIndex + house - 1) == 0);
+        return house;
+    }
+
+    public String getReason() {
+        return "it is a random legal move";
+    }
+}
@@ -0,0 +1,47 @@
+package kalah;
+
+/**
+ * Interface for a computer player strategy. A robot is given a read-only view of the board
+ * and returns the house it will sow from; BmfRobot plays the 'best first move' rules used by
+ * Kalah.robotTurn. A robot keeps state between moves, so each game being played at the same
+ * time needs its own instance.
+ * @author mpie374
+ */
+public interface Robot {
+    /**
+     * Chooses the house the robot will sow from
+     * @param board - the current state of the playing board
+     * @param isPlayOneTurn - TRUE if the robot is playing as Player 1
+     * @return - the house number (1 to NUMHOUSES) of the chosen move
+     */
+    int chooseHouse(BoardView board, boolean isPlayOneTurn);
+
+    /**
+     * Describes why the last chosen house was picked, for the robot's move message
+     * @return - the reason for the last move
+     */
+    String getReason();
+
+    /**
+     * Called when the opponent starts choosing their move. A robot may use the time to think
+     * ahead, but must stop when stopPondering is called and can't rely on the view staying
+     * valid after that.
+     * @param board - the current state of the playing board
+     * @param isOpponentPlayOne - TRUE if the opponent is Player 1
+     */
+    default void startPondering(BoardView board, boolean isOpponentPlayOne) {
+    }
+
+    /**
+     * Called once the opponent has chosen their move, or quit. Returns once any thinking
+     * started by startPondering has stopped.
+     */
+    default void stopPondering() {
+    }
+
+    /**
+     * Stops any threads the robot has started. The robot must not be used afterwards.
+     */
+    default void shutdown() {
+    }
+}
@@ -0,0 +1,28 @@
+package kalah;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event committed for every move a robot chooses while metrics are enabled.
+ * @author mpie374
+ */
+@Name("kalah.RobotDecision")
+@Label("Robot Decision")
+@Category("Kalah")
+@Description("A robot choosing its move")
+class RobotDecisionEvent extends Event {
+    @Label("House")
+    int house;
+
+    @Label("Reason")
+    String reason;
+
+    @Label("Time Taken")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
@@ -0,0 +1,486 @@
+package kalah;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Robot that chooses its move with an alpha-beta minimax search over a copy of the board.
+ * The search deepens one ply at a time until the time or node budget runs out, and keeps
+ * the best move of the deepest search that finished. A move that ends in the player's own
+ * Store is searched as another ply for the same side. Moves are ordered with the same
+ * extra turn and capture checks the 'best first move' robot uses, after any best move
+ * remembered in the transposition table.
+ * With more than one thread, the first root move is searched on the calling thread and the
+ * remaining root moves are split across a ForkJoinPool, each on its own copy of the board,
+ * sharing the transposition table. With one thread the search is fully deterministic.
+ * If an endgame database is set, positions it covers are scored exactly instead of searched.
+ * @author mpie374
+ */
+public class SearchRobot implements Robot {
+    private static final int INFINITY = 1000000;
+    private static final int NODES_PER_CLOCK_CHECK = 1024;
+
+    private final long timeBudgetMillis;
+    private final long nodeBudget;
+    private final int maxDepth;
+    private final TranspositionTable table;
+    private final int threads;
+    private final ForkJoinPool pool;
+    private EndgameDatabase endgameDatabase;
+    private Searcher mainSearcher;
+    private Searcher[] helpers; //one per root move, used when searching in parallel
+    private long deadline;
+    private volatile boolean aborted;
+    private volatile boolean cancelled;
+    private volatile int completedDepth;
+    private int lastScore;
+
+    /**
+     * Creates a robot limited by a per-move time and node budget
+     * @param timeBudgetMillis - time each move may take, in milliseconds
+     * @param nodeBudget - positions each move may visit, or 0 for no limit
+     * @param maxDepth - deepest search to try, in plies
+     */
+    public SearchRobot(long timeBudgetMillis, long nodeBudget, int maxDepth) {
+        this(timeBudgetMillis, nodeBudget, maxDepth, null);
+    }
+
+    /**
+     * Creates a robot limited by a per-move time and node budget that remembers searched
+     * positions in a transposition table
+     * @param timeBudgetMillis - time each move may take, in milliseconds
+     * @param nodeBudget - positions each move may visit, or 0 for no limit
+     * @param maxDepth - deepest search to try, in plies
+     * @param table - table shared by every search of this robot, or null for none
+     */
+    public SearchRobot(long timeBudgetMillis, long nodeBudget, int maxDepth, TranspositionTable table) {
+        this(timeBudgetMillis, nodeBudget, maxDepth, table, 1);
+    }
+
+    /**
+     * Creates a robot that searches on several threads
+     * @param timeBudgetMillis - time each move may take, in milliseconds
+     * @param nodeBudget - positions each move may visit over all threads, or 0 for no limit
+     * @param maxDepth - deepest search to try, in plies
+     * @param table - table shared by every thread of this robot, or null for none
+     * @param threads - number of threads to search with
+     */
+    public SearchRobot(long timeBudgetMillis, long nodeBudget, int maxDepth, TranspositionTable table, int threads) {
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.nodeBudget = nodeBudget;
+        this.maxDepth = maxDepth;
+        this.table = table;
+        this.threads = Math.max(1, threads);
+        this.pool = this.threads > 1 ? new ForkJoinPool(this.threads) : null;
+    }
+
+    /**
+     * Searches the current position with iterative deepening until the budget is spent
+     * @param board - the current state of the playing board
+     * @param isPlayOneTurn - TRUE if the robot is playing as Player 1
+     * @return - the house number of the best move found
+     */
+    public int chooseHouse(BoardView board, boolean isPlayOneTurn) {
+        long started = Metrics.start();
+        prepare(board);
+        aborted = false;
+        completedDepth = 0;
+        //capped so a budget meant as unlimited can't overflow, and compared by difference
+        deadline = System.nanoTime() + Math.min(timeBudgetMillis, Long.MAX_VALUE / 4000000L) * 1000000L;
+
+        int bestIndex = -1;
+        for(int depth = 1; depth <= maxDepth; depth++) {
+            int[] result = searchRoot(depth, isPlayOneTurn);
+            //the first iteration always finishes so there is a move to play
+            if(aborted && completedDepth > 0)
+                break;
+            bestIndex = result[0];
+            lastScore = result[1];
+            completedDepth = depth;
+        }
+        Metrics.recordSearch(started, getNodes());
+        return isPlayOneTurn ? bestIndex + 1 : bestIndex - mainSearcher.core.NUMHOUSES;
+    }
+
+    /**
+     * Describes the depth the last move was chosen at
+     * @return - the reason for the last move
+     */
+    public String getReason() {
+        return "it has the best score of a " + completedDepth + " ply search";
+    }
+
+    /**
+     * Retrieves the score of the last chosen move, in seeds ahead for the robot
+     * @return - score of the deepest search that finished
+     */
+    public int getScore() {
+        return lastScore;
+    }
+
+    /**
+     * Retrieves the depth of the deepest search that finished for the last move
+     * @return - depth in plies
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Retrieves the number of positions visited by the last search over all threads
+     * @return - positions visited
+     */
+    public long getNodes() {
+        long nodes = mainSearcher == null ? 0 : mainSearcher.nodes;
+        if(helpers != null) {
+            for(Searcher helper : helpers) {
+                nodes += helper.nodes;
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Retrieves the transposition table used by this robot
+     * @return - the table, or null if there is none
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Sets the database used to score positions with few seeds left exactly
+     * @param endgameDatabase - memory-mapped database, or null for none
+     */
+    public void setEndgameDatabase(EndgameDatabase endgameDatabase) {
+        this.endgameDatabase = endgameDatabase;
+        mainSearcher = null; //searchers take their own copy of the database when next created
+    }
+
+    /**
+     * Stops the running search as soon as it has a move, and every later search as soon as it
+     * has one, until resetCancel is called. Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Lets searches run to their full budget again after cancel
+     */
+    public void resetCancel() {
+        cancelled = false;
+    }
+
+    /**
+     * Checks whether searches are being cut short by cancel
+     * @return - TRUE if cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stops the robot's search threads. The robot must not be used afterwards.
+     */
+    public void shutdown() {
+        if(pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * Copies the position into the robot's own cores, so the real board is never changed
+     * @param board - the board being played
+     */
+    private void prepare(BoardView board) {
+        if(mainSearcher == null || mainSearcher.core.NUMHOUSES != board.getNumHouses()) {
+            mainSearcher = new Searcher(board.getNumHouses());
+            if(threads > 1) {
+                helpers = new Searcher[board.getNumHouses()];
+                for(int i = 0; i < helpers.length; i++) {
+                    helpers[i] = new Searcher(board.getNumHouses());
+                }
+            }
+        }
+        mainSearcher.reset(board);
+        if(helpers != null) {
+            for(Searcher helper : helpers) {
+                helper.reset(board);
+            }
+        }
+    }
+
+    /**
+     * Searches every root move to the given depth. The first move is searched with a full
+     * window, the others only need to prove they are better than the best so far.
+     * @param depth - plies to search
+     * @param isPlayOneTurn - side to move at the root
+     * @return - index of the best root move and its score, only valid if the search was not aborted
+     */
+    private int[] searchRoot(int depth, boolean isPlayOneTurn) {
+        Searcher main = mainSearcher;
+        long key = main.core.getHash(isPlayOneTurn);
+        int[] moves = main.moveLists[depth];
+        int numMoves = main.orderMoves(moves, isPlayOneTurn, main.tableMove(key));
+        int bestIndex = moves[0];
+        int alpha = main.searchMove(moves[0], depth, -INFINITY, INFINITY, isPlayOneTurn);
+
+        if(pool == null || numMoves == 1) {
+            for(int i = 1; i < numMoves; i++) {
+                int score = main.searchMove(moves[i], depth, alpha, INFINITY, isPlayOneTurn);
+                if(aborted && completedDepth > 0)
+                    break;
+                if(score > alpha) {
+                    alpha = score;
+                    bestIndex = moves[i];
+                }
+            }
+        } else {
+            int[] startAlphas = new int[numMoves];
+            int[] scores = searchInParallel(moves, numMoves, depth, alpha, startAlphas, isPlayOneTurn);
+            //a score above the alpha its helper started with is exact. One at or below it only
+            //bounds the move from above, so if it could still beat the best it is searched again
+            //against the best so far. Ties keep the earlier move in the ordering.
+            for(int i = 1; i < numMoves; i++) {
+                int score = scores[i];
+                if(score > alpha && score <= startAlphas[i]) {
+                    score = main.searchMove(moves[i], depth, alpha, INFINITY, isPlayOneTurn);
+                    if(aborted && completedDepth > 0)
+                        break;
+                }
+                if(score > alpha) {
+                    alpha = score;
+                    bestIndex = moves[i];
+                }
+            }
+        }
+
+        if(table != null && !(aborted && completedDepth > 0))
+            table.store(key, depth, alpha, TranspositionTable.EXACT, bestIndex);
+        return new int[] {bestIndex, alpha};
+    }
+
+    /**
+     * Searches root moves 1 to numMoves - 1 on the pool, each on its own helper
+     * @param startAlphas - filled with the alpha each move was searched with
+     * @return - score of each root move, by position in the move list
+     */
+    private int[] searchInParallel(int[] moves, int numMoves, int depth, int firstScore, int[] startAlphas,
+            boolean isPlayOneTurn) {
+        int[] scores = new int[numMoves];
+        AtomicInteger sharedAlpha = new AtomicInteger(firstScore);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for(int i = 1; i < numMoves; i++) {
+            int moveIndex = i;
+            tasks.add(() -> {
+                Searcher helper = helpers[moveIndex];
+                helper.core.copyFrom(mainSearcher.core);
+                int startAlpha = sharedAlpha.get();
+                startAlphas[moveIndex] = startAlpha;
+                int score = helper.searchMove(moves[moveIndex], depth, startAlpha, INFINITY, isPlayOneTurn);
+                scores[moveIndex] = score;
+                if(score > startAlpha)
+                    sharedAlpha.accumulateAndGet(score, Math::max);
+                return score;
+            });
+        }
+        try {
+            for(Future<Integer> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch(Exception e) {
+            throw new IllegalStateException("Parallel search failed", e);
+        }
+        return scores;
+    }
+
+    /**
+     * Search state owned by a single thread: its copy of the board, its move lists and the
+     * number of positions it has visited
+     */
+    private class Searcher {
+        private final BoardCore core;
+        private final int[][] moveLists; //ordered moves for each ply, reused between searches
+        private final EndgameDatabase database;
+        private long nodes;
+
+        Searcher(int numHouses) {
+            core = new BoardCore(numHouses);
+            moveLists = new int[maxDepth + 1][numHouses];
+            database = endgameDatabase == null ? null : endgameDatabase.copy();
+        }
+
+        void reset(BoardView board) {
+            core.copyFrom(board);
+            nodes = 0;
+        }
+
+        /**
+         * Plays a move, searches the resulting position and takes the move back
+         * @return - score of the move for the side making it
+         */
+        int searchMove(int houseIndex, int depth, int alpha, int beta, boolean isPlayOneTurn) {
+            int score;
+            if(core.makeMove(houseIndex, isPlayOneTurn) == BoardCore.EXTRA_TURN)
+                score = negamax(depth - 1, alpha, beta, isPlayOneTurn);
+            else
+                score = -negamax(depth - 1, -beta, -alpha, !isPlayOneTurn);
+            core.unmakeMove();
+            return score;
+        }
+
+        /**
+         * Alpha-beta search of the current position
+         * @param depth - plies left to search
+         * @param alpha - score the side to move is already guaranteed
+         * @param beta - score the opponent is already guaranteed
+         * @param isPlayOneTurn - side to move
+         * @return - score of the position for the side to move
+         */
+        int negamax(int depth, int alpha, int beta, boolean isPlayOneTurn) {
+            nodes++;
+            if(nodes % NODES_PER_CLOCK_CHECK == 0 && (cancelled || System.nanoTime() - deadline > 0 || overNodeBudget()))
+                aborted = true;
+            if(aborted && completedDepth > 0)
+                return 0;
+
+            if(core.getHouseTotal(isPlayOneTurn) == 0)
+                return finalScore(isPlayOneTurn);
+            if(database != null && database.covers(core))
+                return evaluate(isPlayOneTurn) + database.lookup(core, isPlayOneTurn);
+            if(depth == 0)
+                return evaluate(isPlayOneTurn);
+
+            long key = core.getHash(isPlayOneTurn);
+            int tableMove = -1;
+            if(table != null) {
+                long entry = table.probe(key);
+                if(entry != 0) {
+                    tableMove = TranspositionTable.moveOf(entry);
+                    if(TranspositionTable.depthOf(entry) >= depth) {
+                        int score = TranspositionTable.scoreOf(entry);
+                        int flag = TranspositionTable.flagOf(entry);
+                        if(flag == TranspositionTable.EXACT)
+                            return score;
+                        if(flag == TranspositionTable.LOWER_BOUND && score > alpha)
+                            alpha = score;
+                        else if(flag == TranspositionTable.UPPER_BOUND && score < beta)
+                            beta = score;
+                        if(alpha >= beta)
+                            return score;
+                    }
+                }
+            }
+
+            int originalAlpha = alpha;
+            int[] moves = moveLists[depth];
+            int numMoves = orderMoves(moves, isPlayOneTurn, tableMove);
+            int bestScore = -INFINITY;
+            int bestIndex = moves[0];
+            for(int i = 0; i < numMoves; i++) {
+                int score = searchMove(moves[i], depth, alpha, beta, isPlayOneTurn);
+                if(aborted && completedDepth > 0)
+                    return 0;
+                if(score > bestScore) {
+                    bestScore = score;
+                    bestIndex = moves[i];
+                }
+                if(score > alpha)
+                    alpha = score;
+                if(alpha >= beta)
+                    break;
+            }
+
+            if(table != null) {
+                int flag = TranspositionTable.EXACT;
+                if(bestScore <= originalAlpha)
+                    flag = TranspositionTable.UPPER_BOUND;
+                else if(bestScore >= beta)
+                    flag = TranspositionTable.LOWER_BOUND;
+                table.store(key, depth, bestScore, flag, bestIndex);
+            }
+            return bestScore;
+        }
+
+        /**
+         * Checks the node budget against the positions visited by every thread
+         */
+        private boolean overNodeBudget() {
+            return nodeBudget > 0 && getNodes() > nodeBudget;
+        }
+
+        /**
+         * Finds the best move the transposition table remembers for a position
+         * @param key - hash of the position including the side to move
+         * @return - index of the remembered move, or -1 if there is none
+         */
+        int tableMove(long key) {
+            if(table == null)
+                return -1;
+            long entry = table.probe(key);
+            return entry == 0 ? -1 : TranspositionTable.moveOf(entry);
+        }
+
+        /**
+         * Fills the move list with the legal moves, the table's best move first, then extra turns,
+         * then captures, then the rest
+         * @param moves - list to fill with house indexes
+         * @param isPlayOneTurn - side to move
+         * @param tableMove - index of the move remembered in the table, or -1
+         * @return - number of legal moves
+         */
+        int orderMoves(int[] moves, boolean isPlayOneTurn, int tableMove) {
+            int firstIndex = isPlayOneTurn ? 0 : core.NUMHOUSES + 1;
+            int numMoves = 0;
+            int numPreferred = 0;
+            for(int i = firstIndex; i < firstIndex + core.NUMHOUSES; i++) {
+                if(core.getSeeds(i) == 0)
+                    continue;
+                moves[numMoves++] = i;
+                if(i == tableMove)
+                    swap(moves, numPreferred++, numMoves - 1);
+            }
+            int numTableMoves = numPreferred;
+            for(int i = numTableMoves; i < numMoves; i++) {
+                if(core.endsInStore(moves[i], isPlayOneTurn))
+                    swap(moves, numPreferred++, i);
+            }
+            int numExtraTurns = numPreferred;
+            for(int i = numExtraTurns; i < numMoves; i++) {
+                if(core.leadsToCapture(moves[i], isPlayOneTurn))
+                    swap(moves, numPreferred++, i);
+            }
+            return numMoves;
+        }
+
+        /**
+         * Scores a position part way through the game by the difference between the Stores
+         * @param isPlayOneTurn - side to move
+         * @return - score for the side to move
+         */
+        private int evaluate(boolean isPlayOneTurn) {
+            int difference = core.getStoreTotal(true) - core.getStoreTotal(false);
+            return isPlayOneTurn ? difference : -difference;
+        }
+
+        /**
+         * Scores a finished game, where each Player keeps the seeds left in their Houses
+         * @param isPlayOneTurn - side to move
+         * @return - final seed difference for the side to move
+         */
+        private int finalScore(boolean isPlayOneTurn) {
+            int difference = core.getScore(true) - core.getScore(false);
+            return isPlayOneTurn ? difference : -difference;
+        }
+    }
+
+    private static void swap(int[] moves, int a, int b) {
+        int temp = moves[a];
+        moves[a] = moves[b];
+        moves[b] = temp;
+    }
+}
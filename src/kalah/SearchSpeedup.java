@@ -0,0 +1,85 @@
+package kalah;
+
+import java.util.SplittableRandom;
+
+/**
+ * Measures how the parallel search in SearchRobot speeds up with more threads. A fixed set of
+ * positions, reached by seeded random opening moves, is searched to a fixed depth with 1 to N
+ * threads, and the total time for each thread count is reported against one thread.
+ * Usage: java kalah.SearchSpeedup [maxThreads] [depth] [positions]
+ * @author mpie374
+ */
+public class SearchSpeedup {
+    private static final long TABLE_BYTES = 64L << 20;
+    private static final long NO_TIME_LIMIT_MILLIS = 24L * 60 * 60 * 1000;
+
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+        int numPositions = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        Board[] positions = createPositions(numPositions, 42);
+        searchAll(positions, depth, 1); //warm up the JIT before timing
+
+        System.out.println("threads  seconds  speedup  nodes");
+        double baseSeconds = 0;
+        for(int threads = 1; threads <= maxThreads; threads++) {
+            long start = System.nanoTime();
+            long nodes = searchAll(positions, depth, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if(threads == 1)
+                baseSeconds = seconds;
+            System.out.printf("%7d  %7.3f  %7.2f  %d%n", threads, seconds, baseSeconds / seconds, nodes);
+        }
+    }
+
+    /**
+     * Searches each position to a fixed depth with a fresh table
+     * @return - total positions visited
+     */
+    private static long searchAll(Board[] positions, int depth, int threads) {
+        SearchRobot robot = new SearchRobot(NO_TIME_LIMIT_MILLIS, 0, depth, new TranspositionTable(TABLE_BYTES), threads);
+        long nodes = 0;
+        for(Board position : positions) {
+            robot.getTable().clear();
+            robot.chooseHouse(position, false);
+            nodes += robot.getNodes();
+        }
+        robot.shutdown();
+        return nodes;
+    }
+
+    /**
+     * Plays seeded random opening moves until it is Player 2's turn in each position
+     * @param numPositions - number of positions to create
+     * @param seed - seed for the random moves
+     * @return - the positions, each with Player 2 to move
+     */
+    static Board[] createPositions(int numPositions, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Board[] positions = new Board[numPositions];
+        for(int i = 0; i < numPositions; i++) {
+            Board board = new Board();
+            BoardCore core = board.getCore();
+            boolean isPlayOneTurn = true;
+            int plies = 4 + random.nextInt(6);
+            for(int ply = 0; ply < plies || isPlayOneTurn; ply++) {
+                int firstIndex = isPlayOneTurn ? 0 : core.NUMHOUSES + 1;
+                int houseIndex;
+                do {
+                    houseIndex = firstIndex + random.nextInt(core.NUMHOUSES);
+                } while(core.getSeeds(houseIndex) == 0);
+                if(core.sow(houseIndex, isPlayOneTurn) != BoardCore.EXTRA_TURN)
+                    isPlayOneTurn = !isPlayOneTurn;
+                if(core.getHouseTotal(isPlayOneTurn) == 0) {
+                    //game ended early, start this position again
+                    board = new Board();
+                    core = board.getCore();
+                    isPlayOneTurn = true;
+                    ply = -1;
+                }
+            }
+            positions[i] = board;
+        }
+        return positions;
+    }
+}
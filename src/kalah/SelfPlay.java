@@ -0,0 +1,154 @@
+package kalah;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+/**
+ * Plays a batch of robot against robot games across a pool of threads and reports the
+ * results for Player 1, with games and moves per second. Each worker has its own board and
+ * engine and keeps its own tallies, so workers share no mutable state. The first few plies
+ * of each game are random, drawn from a generator seeded by the run seed and the game's
+ * number, so a run gives the same results whatever the thread count. The robots for each game
+ * are created from the same seed, and policies are the strategy names a Tournament accepts.
+ * Usage: java kalah.SelfPlay [games] [threads] [seed] [openingPlies] [p1Policy] [p2Policy]
+ * where a policy is bmf, random, search:depth[:egdb=file], ponder:depth[:millis], mcts:millis or
+ * book:file:strategy.
+ * @author mpie374
+ */
+public class SelfPlay {
+    public static final String BMF = "bmf";
+    public static final String RANDOM = "random";
+
+    private static final int WINS = 0;
+    private static final int LOSSES = 1;
+    private static final int TIES = 2;
+    private static final int MOVES = 3;
+
+    private final int numGames;
+    private final int threads;
+    private final long seed;
+    private final int openingPlies;
+    private final LongFunction<Robot> p1Strategy;
+    private final LongFunction<Robot> p2Strategy;
+
+    /**
+     * Creates a batch of games
+     * @param numGames - number of games to play
+     * @param threads - number of worker threads
+     * @param seed - seed for the random opening moves
+     * @param openingPlies - number of random moves at the start of each game
+     * @param p1Policy - how Player 1 chooses moves, a strategy name as for Tournament
+     * @param p2Policy - how Player 2 chooses moves, a strategy name as for Tournament
+     * @throws IllegalArgumentException if a policy isn't a known strategy
+     */
+    public SelfPlay(int numGames, int threads, long seed, int openingPlies, String p1Policy, String p2Policy) {
+        this.numGames = numGames;
+        this.threads = threads;
+        this.seed = seed;
+        this.openingPlies = openingPlies;
+        this.p1Strategy = Tournament.strategy(p1Policy);
+        this.p2Strategy = Tournament.strategy(p2Policy);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numGames = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        int openingPlies = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        String p1Policy = args.length > 4 ? args[4] : BMF;
+        String p2Policy = args.length > 5 ? args[5] : BMF;
+
+        long start = System.nanoTime();
+        long[] totals = new SelfPlay(numGames, threads, seed, openingPlies, p1Policy, p2Policy).run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games on %d threads, P1 %s vs P2 %s%n", numGames, threads, p1Policy, p2Policy);
+        System.out.printf("P1 wins %d (%.2f%%), P2 wins %d (%.2f%%), ties %d (%.2f%%)%n",
+                totals[WINS], 100.0 * totals[WINS] / numGames, totals[LOSSES], 100.0 * totals[LOSSES] / numGames,
+                totals[TIES], 100.0 * totals[TIES] / numGames);
+        System.out.printf("%.3f s, %.0f games/sec, %.0f moves/sec%n", seconds, numGames / seconds, totals[MOVES] / seconds);
+    }
+
+    /**
+     * Plays every game and adds up the workers' tallies
+     * @return - Player 1 wins, losses, ties and the total number of moves played
+     * @throws Exception if a worker fails
+     */
+    public long[] run() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> workers = new ArrayList<>();
+            for(int worker = 0; worker < threads; worker++) {
+                int firstGame = worker;
+                workers.add(pool.submit(() -> playGames(firstGame)));
+            }
+            long[] totals = new long[4];
+            for(Future<long[]> worker : workers) {
+                long[] tally = worker.get();
+                for(int i = 0; i < totals.length; i++) {
+                    totals[i] += tally[i];
+                }
+            }
+            return totals;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays every threads'th game, starting from firstGame, on one board
+     * @return - this worker's tally
+     */
+    private long[] playGames(int firstGame) {
+        long[] tally = new long[4];
+        GameEngine engine = new GameEngine();
+        BoardCore core = engine.getBoard().getCore();
+        for(int game = firstGame; game < numGames; game += threads) {
+            engine.reset();
+            long gameSeed = seed * 0x9E3779B97F4A7C15L + game;
+            SplittableRandom random = new SplittableRandom(gameSeed);
+            Robot playerOne = p1Strategy.apply(gameSeed);
+            Robot playerTwo = p2Strategy.apply(gameSeed + 1);
+            int ply = 0;
+            while(!engine.isGameOver()) {
+                boolean isPlayOneTurn = engine.isPlayOneTurn();
+                int house = ply < openingPlies
+                        ? randomHouse(core, isPlayOneTurn, random)
+                        : (isPlayOneTurn ? playerOne : playerTwo).chooseHouse(core, isPlayOneTurn);
+                engine.play(house);
+                ply++;
+            }
+            tally[MOVES] += ply;
+            switch(engine.getOutcome()) {
+                case WIN:
+                    tally[WINS]++;
+                    break;
+                case LOSS:
+                    tally[LOSSES]++;
+                    break;
+                case TIE:
+                    tally[TIES]++;
+                    break;
+            }
+        }
+        return tally;
+    }
+
+    /**
+     * Picks a random house with seeds in it
+     * @return - house number of the move
+     */
+    static int randomHouse(BoardCore core, boolean isPlayOneTurn, SplittableRandom random) {
+        int firstIndex = isPlayOneTurn ? 0 : core.NUMHOUSES + 1;
+        int house;
+        do {
+            house = 1 + random.nextInt(core.NUMHOUSES);
+        } while(core.getSeeds(firstIndex + house - 1) == 0);
+        return house;
+    }
+}
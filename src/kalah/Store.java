@@ -7,8 +7,11 @@ package kalah;
 public class Store extends Pit {
     /**
      * Default constructor - sets starting seeds to 0
+     * @param core - the board core holding the seeds
+     * @param index - index of this Store in the core
      */
-    Store() {
-        this.numSeeds = 0;
+    Store(BoardCore core, int index) {
+        super(core, index);
+        clonePit(0);
     }
 }
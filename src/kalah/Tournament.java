@@ -0,0 +1,318 @@
+package kalah;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+/**
+ * Plays every pair of robot strategies against each other in a round robin. Each pair plays
+ * its games two at a time, with the same seeded random opening and the colours swapped, so
+ * neither side gains from moving first. Games run in parallel on a fixed pool, each with its
+ * own engine and robots. The report gives each pair's score with a 95% Wilson confidence
+ * interval and the Elo difference it implies, then an Elo rating for every strategy fitted
+ * to all the results, and each strategy's mean and p99 decision time.
+ * Strategies are bmf, random, search:depth[:egdb=file], ponder:depth[:millis], mcts:millis or
+ * book:file:strategy.
+ * Usage: java kalah.Tournament [gamesPerPair] [threads] [openingPlies] [seed] strategy...
+ * @author mpie374
+ */
+public class Tournament {
+    private static final double Z = 1.96; //95% confidence
+    private static final long PONDER_TABLE_BYTES = 16 << 20;
+
+    private final String[] names;
+    private final List<LongFunction<Robot>> factories = new ArrayList<>();
+    private final int gamesPerPair;
+    private final int threads;
+    private final int openingPlies;
+    private final long seed;
+    private final LatencyHistogram[] latencies;
+    private final long[][] scores; //scores[a][b] = half points a scored against b
+    private final long[][] games;
+
+    /**
+     * Creates a tournament
+     * @param names - strategies to play, as given on the command line
+     * @param gamesPerPair - games each pair plays, rounded up to an even number
+     * @param threads - games played at once
+     * @param openingPlies - random moves played at the start of each game
+     * @param seed - seed of the openings and of any random strategies
+     */
+    public Tournament(String[] names, int gamesPerPair, int threads, int openingPlies, long seed) {
+        this.names = names;
+        for(String name : names) {
+            factories.add(strategy(name));
+        }
+        this.gamesPerPair = gamesPerPair + gamesPerPair % 2;
+        this.threads = threads;
+        this.openingPlies = openingPlies;
+        this.seed = seed;
+        this.latencies = new LatencyHistogram[names.length];
+        for(int i = 0; i < names.length; i++) {
+            latencies[i] = new LatencyHistogram(names[i]);
+        }
+        this.scores = new long[names.length][names.length];
+        this.games = new long[names.length][names.length];
+    }
+
+    /**
+     * Turns a strategy name into a factory of robots for it
+     * @param name - bmf, random, search:depth[:egdb=file], ponder:depth[:millis], mcts:millis or
+     * book:file:strategy. egdb=file maps an endgame database that scores the positions it covers
+     * exactly, ponder searches its replies while a human opponent thinks, and book's moves are
+     * played while the game is in it and the strategy's after
+     * @return - creates a robot from a seed
+     * @throws IllegalArgumentException if the name isn't a known strategy
+     */
+    static LongFunction<Robot> strategy(String name) {
+        String[] parts = name.split(":");
+        try {
+            switch(parts[0]) {
+                case "book":
+                    String[] bookParts = name.split(":", 3);
+                    Path bookFile = Paths.get(bookParts[1]);
+                    if(!Files.isReadable(bookFile))
+                        throw new IllegalArgumentException("Can't read opening book " + bookFile);
+                    OpeningBook book = OpeningBook.open(bookFile);
+                    LongFunction<Robot> fallback = strategy(bookParts[2]);
+                    return gameSeed -> new BookRobot(book, fallback.apply(gameSeed));
+                case "bmf":
+                    return gameSeed -> new BmfRobot();
+                case "random":
+                    return RandomRobot::new;
+                case "search":
+                    int depth = Integer.parseInt(parts[1]);
+                    EndgameDatabase database = endgameDatabase(name, parts, 2);
+                    return gameSeed -> {
+                        SearchRobot robot = new SearchRobot(Long.MAX_VALUE / 1000000L, 0, depth);
+                        robot.setEndgameDatabase(database);
+                        return robot;
+                    };
+                case "ponder":
+                    int ponderDepth = Integer.parseInt(parts[1]);
+                    long ponderMillis = parts.length > 2 ? Long.parseLong(parts[2]) : Long.MAX_VALUE / 1000000L;
+                    return gameSeed -> new PonderingRobot(ponderMillis, 0, ponderDepth,
+                            new TranspositionTable(PONDER_TABLE_BYTES));
+                case "mcts":
+                    long millis = Long.parseLong(parts[1]);
+                    return gameSeed -> new MctsRobot(millis, 0, 1, gameSeed);
+                default:
+                    throw new IllegalArgumentException("Unknown strategy " + name);
+            }
+        } catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Strategy " + name + " is missing a value, as in search:8, mcts:100"
+                    + " or book:book.bin:search:8", e);
+        }
+    }
+
+    /**
+     * Maps the endgame database named by an egdb=file option, once for every robot of a strategy
+     * @param name - the whole strategy name, for errors
+     * @param parts - the strategy name split at colons
+     * @param firstOption - index of the first option in parts
+     * @return - the database, or null if there is no egdb option
+     */
+    private static EndgameDatabase endgameDatabase(String name, String[] parts, int firstOption) {
+        EndgameDatabase database = null;
+        for(int i = firstOption; i < parts.length; i++) {
+            if(!parts[i].startsWith("egdb="))
+                throw new IllegalArgumentException("Unknown option " + parts[i] + " in strategy " + name);
+            Path file = Paths.get(parts[i].substring("egdb=".length()));
+            try {
+                database = EndgameDatabase.open(file);
+            } catch(IOException e) {
+                throw new IllegalArgumentException("Can't open endgame database " + file, e);
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Plays every game
+     * @throws Exception if a game fails
+     */
+    public void run() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for(int a = 0; a < names.length; a++) {
+                for(int b = a + 1; b < names.length; b++) {
+                    for(int pairGame = 0; pairGame < gamesPerPair; pairGame += 2) {
+                        int first = a;
+                        int second = b;
+                        long gameSeed = seed * 0x9E3779B97F4A7C15L + ((long) a * names.length + b) * gamesPerPair + pairGame;
+                        results.add(pool.submit(() -> playPair(first, second, gameSeed)));
+                    }
+                }
+            }
+            for(Future<int[]> future : results) {
+                int[] result = future.get();
+                int a = result[0];
+                int b = result[1];
+                scores[a][b] += result[2];
+                scores[b][a] += 4 - result[2];
+                games[a][b] += 2;
+                games[b][a] += 2;
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays two games between a pair from the same opening, one with each colour
+     * @return - the pair and the half points the first strategy scored, out of 4
+     */
+    private int[] playPair(int a, int b, long gameSeed) {
+        int halfPoints = 0;
+        for(int swap = 0; swap < 2; swap++) {
+            int playerOne = swap == 0 ? a : b;
+            int playerTwo = swap == 0 ? b : a;
+            Game_Outcome outcome = playGame(playerOne, playerTwo, gameSeed);
+            int playerOneHalfPoints = outcome == Game_Outcome.WIN ? 2 : outcome == Game_Outcome.TIE ? 1 : 0;
+            halfPoints += swap == 0 ? playerOneHalfPoints : 2 - playerOneHalfPoints;
+        }
+        return new int[] {a, b, halfPoints};
+    }
+
+    private Game_Outcome playGame(int playerOne, int playerTwo, long gameSeed) {
+        Robot[] robots = {factories.get(playerOne).apply(gameSeed), factories.get(playerTwo).apply(gameSeed + 1)};
+        int[] strategies = {playerOne, playerTwo};
+        GameEngine engine = new GameEngine();
+        SplittableRandom opening = new SplittableRandom(gameSeed);
+        try {
+            for(int ply = 0; ply < openingPlies && !engine.isGameOver(); ply++) {
+                engine.play(SelfPlay.randomHouse(engine.getBoard().getCore(), engine.isPlayOneTurn(), opening));
+            }
+            while(!engine.isGameOver()) {
+                int side = engine.isPlayOneTurn() ? 0 : 1;
+                long start = System.nanoTime();
+                int house = robots[side].chooseHouse(engine.getBoard(), side == 0);
+                latencies[strategies[side]].record(System.nanoTime() - start);
+                if((engine.play(house) & GameEngine.EMPTY_HOUSE) != 0)
+                    throw new IllegalStateException(names[strategies[side]] + " chose empty house " + house);
+            }
+            return engine.getOutcome();
+        } finally {
+            //a failed game mustn't leave the robots' search pools running
+            for(Robot robot : robots) {
+                robot.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Finds the 95% Wilson score interval of a proportion
+     * @param score - observed proportion
+     * @param n - number of trials
+     * @return - lower and upper bounds
+     */
+    static double[] wilson(double score, long n) {
+        double z2 = Z * Z;
+        double centre = (score + z2 / (2 * n)) / (1 + z2 / n);
+        double half = Z * Math.sqrt(score * (1 - score) / n + z2 / (4.0 * n * n)) / (1 + z2 / n);
+        return new double[] {centre - half, centre + half};
+    }
+
+    /**
+     * Converts an expected score to an Elo difference, limited to finite values
+     * @param score - expected score from 0 to 1
+     * @return - Elo difference
+     */
+    static double elo(double score) {
+        double clamped = Math.min(0.999, Math.max(0.001, score));
+        return -400 * Math.log10(1 / clamped - 1);
+    }
+
+    /**
+     * Fits an Elo rating to every strategy from all the pairs' scores, with one virtual draw
+     * per pair so a strategy that wins every game still gets a finite rating
+     * @return - ratings with a mean of 0
+     */
+    double[] fitRatings() {
+        int n = names.length;
+        double[] ratings = new double[n];
+        for(int iteration = 0; iteration < 1000; iteration++) {
+            for(int i = 0; i < n; i++) {
+                double actual = 0;
+                double expected = 0;
+                double slope = 0;
+                for(int j = 0; j < n; j++) {
+                    if(i == j)
+                        continue;
+                    double played = games[i][j] + 1;
+                    double e = 1 / (1 + Math.pow(10, (ratings[j] - ratings[i]) / 400));
+                    actual += scores[i][j] / 2.0 + 0.5;
+                    expected += played * e;
+                    slope += played * e * (1 - e) * Math.log(10) / 400;
+                }
+                //one Newton step for this rating
+                ratings[i] += (actual - expected) / slope;
+            }
+        }
+        double mean = 0;
+        for(double rating : ratings) {
+            mean += rating / n;
+        }
+        for(int i = 0; i < n; i++) {
+            ratings[i] -= mean;
+        }
+        return ratings;
+    }
+
+    /**
+     * Prints the pairs' results, the fitted ratings and the decision times
+     */
+    public void report() {
+        for(int a = 0; a < names.length; a++) {
+            for(int b = a + 1; b < names.length; b++) {
+                double score = scores[a][b] / 2.0 / games[a][b];
+                double[] interval = wilson(score, games[a][b]);
+                System.out.printf("%-10s vs %-10s %6d games  %s scored %5.1f%% [%5.1f%%, %5.1f%%]  Elo %+5.0f [%+5.0f, %+5.0f]%n",
+                        names[a], names[b], games[a][b], names[a], score * 100, interval[0] * 100, interval[1] * 100,
+                        elo(score), elo(interval[0]), elo(interval[1]));
+            }
+        }
+        double[] ratings = fitRatings();
+        System.out.printf("%n%-10s %6s %8s %12s %12s%n", "strategy", "Elo", "score", "mean ms", "p99 ms");
+        for(int i = 0; i < names.length; i++) {
+            long points = 0;
+            long played = 0;
+            for(int j = 0; j < names.length; j++) {
+                points += scores[i][j];
+                played += games[i][j];
+            }
+            long[] counts = latencies[i].getCounts();
+            long decisions = latencies[i].getCount();
+            System.out.printf("%-10s %+6.0f %7.1f%% %12.4f %12.4f%n", names[i], ratings[i], 50.0 * points / played,
+                    decisions == 0 ? 0 : latencies[i].getTotalNanos() / 1e6 / decisions,
+                    LatencyHistogram.percentile(counts, 99) / 1e6);
+        }
+        System.out.println("p99 is the upper bound of its power of two bucket");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int gamesPerPair = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int openingPlies = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        String[] names = args.length > 4 ? Arrays.copyOfRange(args, 4, args.length)
+                : new String[] {"bmf", "random", "search:4", "mcts:5"};
+
+        Tournament tournament = new Tournament(names, gamesPerPair, threads, openingPlies, seed);
+        long start = System.nanoTime();
+        tournament.run();
+        System.out.printf("Round robin of %d strategies, %d games per pair, %d threads, %.1f s%n%n", names.length,
+                tournament.gamesPerPair, threads, (System.nanoTime() - start) / 1e9);
+        tournament.report();
+    }
+}
@@ -0,0 +1,128 @@
+package kalah;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed size table of search results keyed by the Zobrist hash of a position. Entries are
+ * packed into two parallel long[]s, so the table never grows past the memory cap it was
+ * created with. When two positions share a slot, the result searched to the greater depth
+ * is kept. The table can be shared by search threads without locking: each slot's key is
+ * stored XORed with its entry, so a slot torn by two threads writing at once fails the key
+ * check and reads as a miss.
+ * @author mpie374
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+    public static final int BYTES_PER_ENTRY = 16;
+
+    //entry layout: score (32 bits) | depth (16 bits) | move (8 bits) | flag (2 bits) | used (1 bit)
+    private static final long USED = 1L;
+    private static final int FLAG_SHIFT = 1;
+    private static final int MOVE_SHIFT = 3;
+    private static final int DEPTH_SHIFT = 11;
+    private static final int SCORE_SHIFT = 32;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder replacements = new LongAdder();
+
+    /**
+     * Creates a table that holds as many entries as fit in the memory cap, rounded down to a
+     * power of two
+     * @param maxBytes - most memory the table may use
+     */
+    public TranspositionTable(long maxBytes) {
+        long maxEntries = Math.max(1, maxBytes / BYTES_PER_ENTRY);
+        int size = Integer.highestOneBit((int) Math.min(maxEntries, 1 << 30));
+        keys = new long[size];
+        entries = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Looks up a position
+     * @param key - Zobrist hash of the position, including the side to move
+     * @return - the packed entry, or 0 if the position is not in the table
+     */
+    public long probe(long key) {
+        int slot = (int) key & mask;
+        long entry = entries[slot];
+        if(entry != 0 && (keys[slot] ^ entry) == key) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        return 0;
+    }
+
+    /**
+     * Stores a search result, unless the slot holds a different position searched deeper
+     * @param key - Zobrist hash of the position, including the side to move
+     * @param depth - plies the position was searched to
+     * @param score - score of the position for the side to move
+     * @param flag - EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param move - index of the best move found
+     */
+    public void store(long key, int depth, int score, int flag, int move) {
+        int slot = (int) key & mask;
+        long entry = entries[slot];
+        if(entry != 0 && (keys[slot] ^ entry) != key) {
+            if(depthOf(entry) > depth)
+                return;
+            replacements.increment();
+        }
+        long newEntry = ((long) score << SCORE_SHIFT) | ((long) depth << DEPTH_SHIFT)
+                | ((long) move << MOVE_SHIFT) | ((long) flag << FLAG_SHIFT) | USED;
+        keys[slot] = key ^ newEntry;
+        entries[slot] = newEntry;
+    }
+
+    public static int scoreOf(long entry) {
+        return (int) (entry >> SCORE_SHIFT);
+    }
+
+    public static int depthOf(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFFFF;
+    }
+
+    public static int moveOf(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) & 0xFF;
+    }
+
+    public static int flagOf(long entry) {
+        return (int) (entry >>> FLAG_SHIFT) & 0x3;
+    }
+
+    /**
+     * Empties the table and resets the counters
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+        hits.reset();
+        misses.reset();
+        replacements.reset();
+    }
+
+    public int getSize() {
+        return entries.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getReplacements() {
+        return replacements.sum();
+    }
+}
@@ -0,0 +1,52 @@
+package kalah;
+
+/**
+ * Holds the Zobrist keys used to hash board positions. Each (pit, seed count) pair has its
+ * own pseudo-random key, and a position's hash is the XOR of the keys of all its pits, so a
+ * move only has to XOR out the old key and XOR in the new key of each pit it changes.
+ * The keys are generated from a fixed seed, so hashes are the same in every run.
+ * @author mpie374
+ */
+public final class Zobrist {
+    public static final long PLAYER_ONE_TO_MOVE = mix(0x5DEECE66DL);
+    private static final int TABLE_PITS = 64;
+    private static final int TABLE_SEEDS = 256;
+    private static final long[] KEYS = new long[TABLE_PITS * TABLE_SEEDS];
+
+    static {
+        for(int pit = 0; pit < TABLE_PITS; pit++) {
+            for(int seeds = 0; seeds < TABLE_SEEDS; seeds++) {
+                KEYS[pit * TABLE_SEEDS + seeds] = computeKey(pit, seeds);
+            }
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Retrieves the key for a pit holding a number of seeds
+     * @param index - index of the pit on the board
+     * @param seeds - number of seeds in the pit
+     * @return - the Zobrist key
+     */
+    public static long key(int index, int seeds) {
+        if(index < TABLE_PITS && seeds < TABLE_SEEDS)
+            return KEYS[index * TABLE_SEEDS + seeds];
+        return computeKey(index, seeds);
+    }
+
+    private static long computeKey(int index, int seeds) {
+        return mix(((long) index << 32) | seeds);
+    }
+
+    /**
+     * SplitMix64 finaliser, spreads a counter into a well mixed 64 bit value
+     */
+    private static long mix(long value) {
+        long z = (value + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}